@@ -0,0 +1,141 @@
+package com.mycompany.phase1;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+// Pushes availability changes to subscribed connections (SUBSCRIBE).
+//
+// A subscription watches one category for one stay (start, nights). Bookings
+// and cancellations only mark the touched room dirty in every overlapping
+// subscription, so the booking path never waits for a subscriber. A marked
+// subscription is flushed after -Dpush.delayMs (default 50): each dirty room is
+// re-checked against the calendar and one line lists the rooms whose state
+// changed since the last line:
+//     EVT <subId> +Room_id -Room_id ...      (+ now free, - now taken)
+// At most one flush per subscription runs at a time; changes that arrive
+// meanwhile accumulate in its dirty set (one bit per room). Sinks never block:
+// the line is queued in the connection's bounded output (OutboundBuffer, or the
+// NIO loop's queue), and a connection past its output limit is closed instead
+// (OutputLimits). A subscriber whose sink refuses a line (connection gone or
+// closed for being too slow) is dropped, so a stalled one costs bounded memory.
+public class AvailabilityFeed {
+    private static final long DELAY_MS = Long.getLong("push.delayMs", 50);
+
+    private final Inventory inventory;
+    private final List<List<Subscription>> byCategory = new ArrayList<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "availability-push");
+        t.setDaemon(true);
+        return t;
+    });
+    // flushes re-check the calendar off the timer thread, one virtual thread each
+    private final ExecutorService writers = Executors.newVirtualThreadPerTaskExecutor();
+
+    public AvailabilityFeed(Inventory inventory) {
+        this.inventory = inventory;
+        for (int c = 0; c < inventory.categoryCount(); c++) byCategory.add(new CopyOnWriteArrayList<>());
+    }
+
+    public final class Subscription {
+        final String id;
+        final int cat;
+        final long day;
+        final int nights;
+        private final Predicate<String> sink;
+        private final BitSet dirty = new BitSet();   // guarded by this
+        private final BitSet free = new BitSet();    // as last reported; guarded by this
+        private boolean scheduled;                   // guarded by this
+
+        Subscription(String id, int cat, long day, int nights, Predicate<String> sink) {
+            this.id = id;
+            this.cat = cat;
+            this.day = day;
+            this.nights = nights;
+            this.sink = sink;
+        }
+
+        boolean overlaps(long from, int n) {
+            return from < day + nights && day < from + n;
+        }
+
+        synchronized void mark(int room) {
+            dirty.set(room);
+            if (scheduled) return;
+            scheduled = true;
+            timer.schedule(() -> writers.execute(this::flush), DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+
+        private void flush() {
+            while (true) {
+                String line;
+                synchronized (this) {
+                    if (dirty.isEmpty()) {
+                        scheduled = false;
+                        return;
+                    }
+                    line = changes();
+                    dirty.clear();
+                }
+                if (line != null && !sink.test(line)) {
+                    cancel(this);
+                    return;
+                }
+            }
+        }
+
+        // the EVT line for the dirty rooms whose state differs from the last report
+        private String changes() {
+            StringBuilder sb = null;
+            for (int r = dirty.nextSetBit(0); r >= 0; r = dirty.nextSetBit(r + 1)) {
+                boolean now = isFree(r);
+                if (now == free.get(r)) continue;
+                free.set(r, now);
+                if (sb == null) sb = new StringBuilder("EVT ").append(id);
+                sb.append(' ').append(now ? '+' : '-').append(inventory.roomId(cat, r).replace(' ', '_'));
+            }
+            return sb == null ? null : sb.toString();
+        }
+
+        private boolean isFree(int room) {
+            return inventory.inHorizon(day, nights) && inventory.isFree(cat, room, day, nights);
+        }
+
+        // CSV of the rooms free right now; becomes the baseline for later events
+        synchronized String snapshot() {
+            StringBuilder sb = new StringBuilder();
+            for (int r = 0; r < inventory.roomCount(cat); r++) {
+                boolean now = isFree(r);
+                free.set(r, now);
+                if (!now) continue;
+                if (sb.length() > 0) sb.append(',');
+                sb.append(inventory.roomId(cat, r));
+            }
+            return sb.toString();
+        }
+    }
+
+    // registered before the baseline is taken, so no change can fall in between
+    public Subscription subscribe(String id, int cat, long day, int nights, Predicate<String> sink) {
+        Subscription s = new Subscription(id, cat, day, nights, sink);
+        byCategory.get(cat).add(s);
+        return s;
+    }
+
+    public void cancel(Subscription s) {
+        byCategory.get(s.cat).remove(s);
+    }
+
+    // called after a booking or cancellation of room for [day, day + nights)
+    public void changed(int cat, int room, long day, int nights) {
+        for (Subscription s : byCategory.get(cat)) {
+            if (s.overlaps(day, nights)) s.mark(room);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.mycompany.phase1;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Binary codec, negotiated per connection with the text line "HELLO BIN".
+// After "OK HELLO BIN" both sides exchange frames only:
+//     varint length, payload
+// A request payload is an opcode byte followed by its fields; a response payload
+// is a status byte followed, for OK, by the opcode's result. Responses come back
+// in request order. Integers are unsigned LEB128 varints, strings are a varint
+// byte count plus UTF-8, rooms are (category code, room code) from CATALOG.
+// No frame is longer than MAX_FRAME. A longer response (MY_RES of a busy user,
+// CATALOG of a big hotel) goes out as several frames: each but the last is status
+// MORE plus the next part of the result, the last has the real status and the
+// rest; the receiver joins the parts. Requests are never split.
+// The user of BOOK, BOOK_MULTI, HOLD, CONFIRM, RELEASE, MY_RES and CANCEL may be a
+// LOGIN token (SessionTable).
+// START is 1..7 (next Sunday..Saturday, as in the text protocol) or an epoch day.
+//
+//   PING                                               -> OK
+//   REGISTER   user, password                          -> OK
+//   LOGIN      user, password                          -> OK token
+//   LIST_AVAIL cat, start, nights                      -> OK count, count x room
+//   BOOK       user, cat, room, start, nights          -> OK resId
+//   MY_RES     user                                    -> OK count, count x (resId, cat, room, epochDay, nights)
+//   CANCEL     user, resId                             -> OK
+//   CATALOG                                            -> OK cats, cats x (name, rooms, rooms x name)
+//   BOOK_MULTI user, count, count x (cat, room, start, nights) -> OK count x resId (all or none)
+//   HOLD       user, cat, room, start, nights          -> OK holdId, ttlSeconds
+//   CONFIRM    user, holdId                            -> OK resId
+//   RELEASE    user, holdId                            -> OK
+public final class BinaryCodec {
+    public static final byte PING = 1, REGISTER = 2, LOGIN = 3, LIST_AVAIL = 4,
+            BOOK = 5, MY_RES = 6, CANCEL = 7, CATALOG = 8, BOOK_MULTI = 9,
+            HOLD = 10, CONFIRM = 11, RELEASE = 12;
+
+    public static final byte OK = 0, USER_EXISTS = 1, BAD_CREDENTIALS = 2, NO_SUCH_USER = 3,
+            NO_AVAIL = 4, NO_SUCH_RES = 5, BAD_REQUEST = 6, UNKNOWN_COMMAND = 7, NO_SESSION = 8,
+            BUSY = 9, NO_SUCH_HOLD = 10, TOO_MANY_HOLDS = 11, MORE = 12;
+
+    // same words as the text protocol's ERR responses, indexed by status
+    private static final String[] STATUS_NAMES = {"OK", "USER_EXISTS", "BAD_CREDENTIALS",
+            "NO_SUCH_USER", "NO_AVAIL", "NO_SUCH_RES", "BAD_REQUEST", "UNKNOWN_COMMAND", "NO_SESSION",
+            "BUSY", "NO_SUCH_HOLD", "TOO_MANY_HOLDS", "MORE"};
+
+    public static final int MAX_FRAME = 64 * 1024;
+    public static final int HEADER = 5;  // room reserved for the length prefix
+
+    private BinaryCodec() {}
+
+    public static String statusName(int status) {
+        return status >= 0 && status < STATUS_NAMES.length ? STATUS_NAMES[status] : "BAD_REQUEST";
+    }
+
+    // ---------- frames ----------
+    // Payloads are written after HEADER spare bytes; finishFrame then puts the
+    // length right in front of them, so nothing is copied.
+    public static void startFrame(ByteBuffer b) {
+        b.clear().position(HEADER);
+    }
+
+    // leaves b positioned at the frame (length + payload) and limited to its end
+    public static void finishFrame(ByteBuffer b) {
+        int end = b.position();
+        int len = end - HEADER;
+        int start = HEADER - varintSize(len);
+        b.position(start);
+        putVarint(b, len);
+        b.limit(end).position(start);
+    }
+
+    // finishFrame for a response: one frame, or several when the payload is over
+    // MAX_FRAME (see above); the result is b or a new buffer, positioned the same way
+    public static ByteBuffer finishResponse(ByteBuffer b) {
+        int end = b.position();
+        if (end - HEADER <= MAX_FRAME) {
+            finishFrame(b);
+            return b;
+        }
+        byte status = b.get(HEADER);
+        int part = MAX_FRAME - 1;
+        int rest = end - HEADER - 1;
+        ByteBuffer out = ByteBuffer.allocate(rest + (rest / part + 1) * (1 + HEADER));
+        for (int from = HEADER + 1; from < end; from += part) {
+            int n = Math.min(part, end - from);
+            putVarint(out, n + 1);
+            out.put(from + n < end ? MORE : status);
+            out.put(b.slice(from, n));
+        }
+        out.flip();
+        return out;
+    }
+
+    // Payload length of the frame at b's position if all of it has arrived; the
+    // position is then moved past the length. -1 (position unchanged) otherwise.
+    public static int completeFrame(ByteBuffer b) throws IOException {
+        int p = b.position();
+        int len = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (p >= b.limit()) return -1;
+            if (shift > 28) throw new IOException("bad frame length");
+            int x = b.get(p++);
+            len |= (x & 0x7F) << shift;
+            if (x >= 0) break;
+        }
+        if (len > MAX_FRAME) throw new IOException("frame too large");
+        if (b.limit() - p < len) return -1;
+        b.position(p);
+        return len;
+    }
+
+    // blocking streams: payload length of the next frame, -1 at a clean end of stream
+    public static int readFrameLength(InputStream in) throws IOException {
+        int len = 0;
+        for (int shift = 0; ; shift += 7) {
+            int x = in.read();
+            if (x < 0) {
+                if (shift == 0) return -1;
+                throw new EOFException("connection closed inside a frame");
+            }
+            if (shift > 28) throw new IOException("bad frame length");
+            len |= (x & 0x7F) << shift;
+            if (x < 0x80) break;
+        }
+        if (len > MAX_FRAME) throw new IOException("frame too large");
+        return len;
+    }
+
+    // b with at least n bytes remaining; a bigger copy (same position) if needed
+    public static ByteBuffer ensure(ByteBuffer b, int n) {
+        if (b.remaining() >= n) return b;
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(b.capacity() * 2, b.position() + n));
+        b.flip();
+        grown.put(b);
+        return grown;
+    }
+
+    // ---------- fields ----------
+    public static int varintSize(long v) {
+        int n = 1;
+        while ((v >>>= 7) != 0) n++;
+        return n;
+    }
+
+    public static void putVarint(ByteBuffer b, long v) {
+        while ((v & ~0x7FL) != 0) {
+            b.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        b.put((byte) v);
+    }
+
+    public static long getVarint(ByteBuffer b) {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte x = b.get();
+            v |= (long) (x & 0x7F) << shift;
+            if (x >= 0) return v;
+        }
+        throw new IllegalArgumentException("varint too long");
+    }
+
+    public static int getInt(ByteBuffer b) {
+        long v = getVarint(b);
+        if (v < 0 || v > Integer.MAX_VALUE) throw new IllegalArgumentException("field out of range");
+        return (int) v;
+    }
+
+    // upper bound of the encoded size, for ensure()
+    public static int maxStringSize(String s) {
+        return HEADER + s.length() * 3;
+    }
+
+    // ASCII is copied char by char; anything else goes through the encoder
+    public static void putString(ByteBuffer b, String s) {
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            if (s.charAt(i) >= 0x80) {
+                byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+                putVarint(b, utf8.length);
+                b.put(utf8);
+                return;
+            }
+        }
+        putVarint(b, n);
+        for (int i = 0; i < n; i++) b.put((byte) s.charAt(i));
+    }
+
+    // b must be a heap buffer (both engines decode from byte arrays)
+    public static String getString(ByteBuffer b) {
+        int len = getInt(b);
+        if (len > b.remaining()) throw new IllegalArgumentException("string past end of frame");
+        String s = new String(b.array(), b.arrayOffset() + b.position(), len, StandardCharsets.UTF_8);
+        b.position(b.position() + len);
+        return s;
+    }
+}
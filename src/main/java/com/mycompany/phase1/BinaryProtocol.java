@@ -0,0 +1,253 @@
+package com.mycompany.phase1;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.mycompany.phase1.BinaryCodec.*;
+
+// Server side of BinaryCodec: decodes one request payload and encodes the framed
+// response into a buffer that is reused for the whole connection. Numbers are
+// read straight from the frame and room lists are written as codes, so LIST_AVAIL
+// and PING allocate nothing; only usernames, passwords and reservation ids
+// become Strings, because the state is keyed by them.
+public class BinaryProtocol {
+    private final ServerState state;
+    private final CommandHandler connection;  // owns the connection's sessions
+    private final Inventory inventory;
+    private final int[] rooms;   // LIST_AVAIL scratch
+    private ByteBuffer out = ByteBuffer.allocate(4096);
+
+    public BinaryProtocol(ServerState state, CommandHandler connection) {
+        this.state = state;
+        this.connection = connection;
+        this.inventory = state.inventory();
+        int most = 0;
+        for (int c = 0; c < inventory.categoryCount(); c++) most = Math.max(most, inventory.roomCount(c));
+        this.rooms = new int[most];
+    }
+
+    // LOGIN and REGISTER wait for the auth pool, the commands that change
+    // reservations for the log's fsync (see NioServer)
+    public static boolean slow(ByteBuffer req) {
+        byte op = req.get(req.position());
+        return op == LOGIN || op == REGISTER || op == BOOK || op == BOOK_MULTI
+                || op == CANCEL || op == CONFIRM;
+    }
+
+    // req holds exactly one payload; the returned frame(s) are valid until the next call
+    public ByteBuffer handle(ByteBuffer req) {
+        startFrame(out);
+        try {
+            respond(req);
+        } catch (RuntimeException e) {
+            out.position(HEADER);
+            // UncheckedIOException: the change could not be saved and was undone
+            out.put(e instanceof NoSession ? NO_SESSION
+                    : e instanceof RejectedExecutionException || e instanceof UncheckedIOException ? BUSY
+                    : BAD_REQUEST);
+        }
+        return finishResponse(out);
+    }
+
+    private void respond(ByteBuffer req) {
+        byte op = req.get();
+        switch (op) {
+            case PING:
+                out.put(OK);
+                return;
+
+            case REGISTER: {
+                String user = getString(req);
+                String pass = getString(req);
+                if (SessionTable.isToken(user)) out.put(BAD_REQUEST);
+                else out.put(state.register(user, pass) ? OK : USER_EXISTS);
+                return;
+            }
+
+            case LOGIN: {
+                String user = getString(req);
+                String pass = getString(req);
+                if (state.login(user, pass)) {
+                    String token = connection.openSession(user);
+                    out = ensure(out, 1 + maxStringSize(token));
+                    out.put(OK);
+                    putString(out, token);
+                    return;
+                }
+                out.put(state.userExists(user) ? BAD_CREDENTIALS : NO_SUCH_USER);
+                return;
+            }
+
+            case LIST_AVAIL: {
+                int cat = category(req);
+                long day = state.startDay(getVarint(req));
+                int nights = getInt(req);
+                int n = state.availableRooms(cat, day, nights, rooms);
+                out = ensure(out, 1 + HEADER * (n + 1));
+                out.put(OK);
+                putVarint(out, n);
+                for (int i = 0; i < n; i++) putVarint(out, rooms[i]);
+                return;
+            }
+
+            case BOOK: {
+                String user = user(req);
+                int cat = category(req);
+                int room = getInt(req);
+                long day = state.startDay(getVarint(req));
+                int nights = getInt(req);
+                String resId = knownRoom(cat, room)
+                        ? state.reserve(user, cat, room, LocalDate.ofEpochDay(day), nights) : null;
+                if (resId == null) {
+                    out.put(NO_AVAIL);
+                    return;
+                }
+                out = ensure(out, 1 + maxStringSize(resId));
+                out.put(OK);
+                putString(out, resId);
+                return;
+            }
+
+            case BOOK_MULTI: {
+                String user = user(req);
+                int n = getInt(req);
+                if (n < 1 || n > req.remaining()) throw new IllegalArgumentException("bad count");
+                int[] cats = new int[n], roomCodes = new int[n], nights = new int[n];
+                long[] days = new long[n];
+                boolean unknownRoom = false;
+                for (int i = 0; i < n; i++) {
+                    cats[i] = category(req);
+                    roomCodes[i] = getInt(req);
+                    days[i] = state.startDay(getVarint(req));
+                    nights[i] = getInt(req);
+                    unknownRoom |= !knownRoom(cats[i], roomCodes[i]);
+                }
+                List<String> ids = unknownRoom ? null
+                        : state.reserveAll(user, cats, roomCodes, days, nights);
+                if (ids == null) {
+                    out.put(NO_AVAIL);
+                    return;
+                }
+                out.put(OK);
+                putVarint(out, n);
+                for (String id : ids) {
+                    out = ensure(out, maxStringSize(id));
+                    putString(out, id);
+                }
+                return;
+            }
+
+            case HOLD: {
+                String user = user(req);
+                int cat = category(req);
+                int room = getInt(req);
+                long day = state.startDay(getVarint(req));
+                int nights = getInt(req);
+                String holdId;
+                try {
+                    holdId = knownRoom(cat, room)
+                            ? state.hold(user, cat, room, LocalDate.ofEpochDay(day), nights) : null;
+                } catch (IllegalStateException e) {
+                    out.put(TOO_MANY_HOLDS);
+                    return;
+                }
+                if (holdId == null) {
+                    out.put(NO_AVAIL);
+                    return;
+                }
+                out = ensure(out, 1 + maxStringSize(holdId) + HEADER);
+                out.put(OK);
+                putString(out, holdId);
+                putVarint(out, HoldTable.ttlSeconds());
+                return;
+            }
+
+            case CONFIRM: {
+                String user = user(req);
+                String resId = state.confirmHold(user, getString(req));
+                if (resId == null) {
+                    out.put(NO_SUCH_HOLD);
+                    return;
+                }
+                out = ensure(out, 1 + maxStringSize(resId));
+                out.put(OK);
+                putString(out, resId);
+                return;
+            }
+
+            case RELEASE: {
+                String user = user(req);
+                out.put(state.releaseHold(user, getString(req)) ? OK : NO_SUCH_HOLD);
+                return;
+            }
+
+            case MY_RES: {
+                List<Reservation> rs = state.reservationsFor(user(req));
+                out.put(OK);
+                putVarint(out, rs.size());
+                for (Reservation r : rs) {
+                    out = ensure(out, maxStringSize(r.getId()) + HEADER * 4);
+                    putString(out, r.getId());
+                    putVarint(out, Math.max(0, inventory.catIndex(r.getRoom().getType())));
+                    putVarint(out, r.getRoom().getNumber() - 1);
+                    putVarint(out, r.getDate().toEpochDay());
+                    putVarint(out, r.getNights());
+                }
+                return;
+            }
+
+            case CANCEL: {
+                String user = user(req);
+                String resId = getString(req);
+                out.put(state.cancelReservation(user, resId) ? OK : NO_SUCH_RES);
+                return;
+            }
+
+            case CATALOG:
+                out.put(OK);
+                putVarint(out, inventory.categoryCount());
+                for (int c = 0; c < inventory.categoryCount(); c++) {
+                    out = ensure(out, maxStringSize(inventory.category(c)) + HEADER);
+                    putString(out, inventory.category(c));
+                    putVarint(out, inventory.roomCount(c));
+                    for (int r = 0; r < inventory.roomCount(c); r++) {
+                        out = ensure(out, maxStringSize(inventory.roomId(c, r)));
+                        putString(out, inventory.roomId(c, r));
+                    }
+                }
+                return;
+
+            default:
+                out.put(UNKNOWN_COMMAND);
+        }
+    }
+
+    // a username or this connection's LOGIN token; NO_SESSION otherwise
+    private String user(ByteBuffer req) {
+        String user = connection.user(getString(req));
+        if (user == null) throw new NoSession();
+        return user;
+    }
+
+    private static final class NoSession extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        NoSession() {
+            super(null, null, false, false);
+        }
+    }
+
+    private int category(ByteBuffer req) {
+        int cat = getInt(req);
+        if (cat < 0 || cat >= inventory.categoryCount()) throw new IllegalArgumentException("bad category");
+        return cat;
+    }
+
+    // checked before the room reaches Inventory, which trusts its callers
+    private boolean knownRoom(int cat, int room) {
+        return room >= 0 && room < inventory.roomCount(cat);
+    }
+}
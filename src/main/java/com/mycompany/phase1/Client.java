@@ -2,35 +2,498 @@ package com.mycompany.phase1;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
+// Requests are pipelined: every command is written immediately and its future
+// queued; one reader thread completes the futures in order, because the server
+// answers each connection's commands in the order it received them.
+// After useRequestIds() (protocol v2) each command carries an id instead and
+// responses are matched by id, so the server may answer them out of order.
+// After useBinary() the same commands travel as BinaryCodec frames; responses
+// are turned back into the text protocol's lines, so callers do not change.
+// Lines starting "EVT " are availability pushes for subscribe(), not responses;
+// they go to the onEvent listener on the reader thread.
+// After login() the session token the server returned is sent in place of that
+// username, so the server does not look the user up again.
 public class Client {
     private Socket socket;
     private BufferedReader in;
     private PrintWriter out;
+    private final Queue<CompletableFuture<String>> pending = new ConcurrentLinkedQueue<>();
+    private final Map<Long, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private volatile boolean tagged;
+    private long nextId;  // guarded by this
+    private volatile Consumer<String> events = line -> {};
+    private volatile String[] session;  // {username, token} of the last login
+
+    // binary codec
+    private volatile boolean binary;
+    private final Queue<Call> calls = new ConcurrentLinkedQueue<>();
+    private OutputStream frameOut;                             // guarded by this
+    private ByteBuffer frame = ByteBuffer.allocate(256);       // guarded by this
+    private volatile String[] catalogCats = new String[0];
+    private volatile String[][] catalogRooms = new String[0][];
+
+    // a binary request waiting for its response, which does not repeat the category
+    private static final class Call {
+        final CompletableFuture<String> future;
+        final byte op;
+        final int cat;
+
+        Call(CompletableFuture<String> future, byte op, int cat) {
+            this.future = future;
+            this.op = op;
+            this.cat = cat;
+        }
+    }
 
     public void connect(String host, int port) throws IOException {
         socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
         in  = new BufferedReader(
                 new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
         out = new PrintWriter(
-                new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+                new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), false);
+
+        BufferedReader reader = in;
+        InputStream raw = socket.getInputStream();
+        Thread t = new Thread(() -> readLoop(reader, raw), "client-reader");
+        t.setDaemon(true);
+        t.start();
         System.out.println("Connected to server");
     }
 
-    public void close() throws IOException {
+    public synchronized void close() throws IOException {
+        try { if (frameOut != null) frameOut.close(); } catch (Exception ignored) {}
         try { if (out != null) out.close(); } catch (Exception ignored) {}
         try { if (in  != null) in.close();  } catch (Exception ignored) {}
         try { if (socket != null) socket.close(); } catch (Exception ignored) {}
-        socket = null; in = null; out = null;
+        socket = null; in = null; out = null; frameOut = null;
+        session = null;
+    }
+
+    private void readLoop(BufferedReader reader, InputStream raw) {
+        try {
+            String resp;
+            while ((resp = reader.readLine()) != null) {
+                resp = resp.trim();
+                if (resp.startsWith("EVT ")) {
+                    events.accept(resp);
+                    continue;
+                }
+                CompletableFuture<String> f;
+                if (tagged) {
+                    int sp = resp.indexOf(' ');
+                    if (sp < 0) continue;
+                    try {
+                        f = inFlight.remove(Long.parseLong(resp.substring(0, sp)));
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                    resp = resp.substring(sp + 1);
+                } else {
+                    f = pending.poll();
+                }
+                if (resp.equals("OK HELLO BIN")) {
+                    // nothing follows until our first frame, so the reader holds no extra bytes
+                    binary = true;
+                    if (f != null) f.complete(resp);
+                    readFrames(new BufferedInputStream(raw));
+                    break;
+                }
+                if (f != null) f.complete(resp);
+            }
+        } catch (IOException ignored) {
+        } finally {
+            IOException closed = new IOException("Server closed connection");
+            CompletableFuture<String> f;
+            while ((f = pending.poll()) != null) f.completeExceptionally(closed);
+            Call call;
+            while ((call = calls.poll()) != null) call.future.completeExceptionally(closed);
+            inFlight.values().forEach(x -> x.completeExceptionally(closed));
+            inFlight.clear();
+        }
+    }
+
+    // switches this connection to protocol v2 (request ids); false if the server is too old
+    public synchronized boolean useRequestIds() throws IOException {
+        if (tagged) return true;
+        String r = rpc("HELLO 2");  // sendAll is locked out until the reply arrives
+        tagged = r.startsWith("OK HELLO 2");
+        return tagged;
+    }
+
+    // switches this connection to the binary codec; false if the server does not
+    // support it or request ids are in use (binary responses come back in order)
+    public synchronized boolean useBinary() throws IOException {
+        if (binary) return true;
+        if (tagged) return false;
+        if (!rpc("HELLO BIN").equals("OK HELLO BIN")) return false;
+        out.flush();
+        frameOut = new BufferedOutputStream(socket.getOutputStream());
+        String r = rpc("CATALOG");  // room codes for every later request
+        if (!r.startsWith("OK")) throw new IOException("Bad CATALOG response: " + r);
+        return true;
+    }
+
+    private void readFrames(InputStream raw) throws IOException {
+        byte[] buf = new byte[256];
+        ByteArrayOutputStream parts = new ByteArrayOutputStream();  // MORE frames of the current response
+        int len;
+        while ((len = BinaryCodec.readFrameLength(raw)) >= 0) {
+            if (len > buf.length) buf = new byte[Math.max(len, buf.length * 2)];
+            if (raw.readNBytes(buf, 0, len) < len) throw new EOFException("connection closed inside a frame");
+            if (len > 0 && buf[0] == BinaryCodec.MORE) {
+                parts.write(buf, 1, len - 1);
+                continue;
+            }
+            ByteBuffer payload = ByteBuffer.wrap(buf, 0, len);
+            if (parts.size() > 0) {  // status, then every part in order
+                byte[] whole = new byte[parts.size() + len];
+                whole[0] = buf[0];
+                System.arraycopy(parts.toByteArray(), 0, whole, 1, parts.size());
+                System.arraycopy(buf, 1, whole, 1 + parts.size(), len - 1);
+                parts.reset();
+                payload = ByteBuffer.wrap(whole);
+            }
+            Call call = calls.poll();
+            if (call == null) continue;
+            try {
+                call.future.complete(decode(call, payload));
+            } catch (RuntimeException e) {
+                call.future.complete("ERR BAD_REQUEST");
+            }
+        }
+    }
+
+    // back to the text protocol's response line
+    private String decode(Call call, ByteBuffer b) {
+        byte status = b.get();
+        if (status != BinaryCodec.OK) return "ERR " + BinaryCodec.statusName(status);
+        switch (call.op) {
+            case BinaryCodec.PING:     return "OK PONG";
+            case BinaryCodec.REGISTER: return "OK REGISTERED";
+            case BinaryCodec.LOGIN:    return b.hasRemaining() ? "OK LOGIN " + BinaryCodec.getString(b) : "OK LOGIN";
+            case BinaryCodec.CANCEL:   return "OK CANCELED";
+            case BinaryCodec.BOOK:     return "OK CONFIRMED " + BinaryCodec.getString(b);
+            case BinaryCodec.CONFIRM:  return "OK CONFIRMED " + BinaryCodec.getString(b);
+            case BinaryCodec.RELEASE:  return "OK RELEASED";
+            case BinaryCodec.HOLD:     return "OK HELD " + BinaryCodec.getString(b) + " " + BinaryCodec.getVarint(b);
+
+            case BinaryCodec.BOOK_MULTI: {
+                StringBuilder sb = new StringBuilder("OK CONFIRMED ");
+                int n = BinaryCodec.getInt(b);
+                for (int i = 0; i < n; i++) {
+                    if (i > 0) sb.append(',');
+                    sb.append(BinaryCodec.getString(b));
+                }
+                return sb.toString();
+            }
+
+            case BinaryCodec.LIST_AVAIL: {
+                String[] names = catalogRooms[call.cat];
+                StringBuilder sb = new StringBuilder("OK ROOMS ");
+                int n = BinaryCodec.getInt(b);
+                for (int i = 0; i < n; i++) {
+                    if (i > 0) sb.append(',');
+                    sb.append(names[BinaryCodec.getInt(b)]);
+                }
+                return sb.toString();
+            }
+
+            case BinaryCodec.MY_RES: {
+                StringBuilder sb = new StringBuilder("OK RES ");
+                int n = BinaryCodec.getInt(b);
+                for (int i = 0; i < n; i++) {
+                    if (i > 0) sb.append(',');
+                    String id = BinaryCodec.getString(b);
+                    String room = catalogRooms[BinaryCodec.getInt(b)][BinaryCodec.getInt(b)];
+                    sb.append(id).append('|').append(room)
+                      .append('@').append(LocalDate.ofEpochDay(BinaryCodec.getVarint(b)))
+                      .append('x').append(BinaryCodec.getInt(b));
+                }
+                return sb.toString();
+            }
+
+            case BinaryCodec.CATALOG: {
+                String[] cats = new String[BinaryCodec.getInt(b)];
+                String[][] rooms = new String[cats.length][];
+                for (int c = 0; c < cats.length; c++) {
+                    cats[c] = BinaryCodec.getString(b);
+                    rooms[c] = new String[BinaryCodec.getInt(b)];
+                    for (int r = 0; r < rooms[c].length; r++) rooms[c][r] = BinaryCodec.getString(b);
+                }
+                catalogRooms = rooms;
+                catalogCats = cats;
+                return "OK CATALOG";
+            }
+
+            default:
+                return "ERR BAD_REQUEST";
+        }
+    }
+
+    // Encodes one text command as a frame into `frame`; returns the Call to queue,
+    // or null after answering f locally (bad arguments, unknown room, unsupported command).
+    private Call encode(String line, CompletableFuture<String> f) {
+        String[] t = line.trim().split("\\s+");
+        String cmd = t[0].toUpperCase();
+        BinaryCodec.startFrame(frame);
+        frame = BinaryCodec.ensure(frame, BinaryCodec.maxStringSize(line) * 2);
+        int cat = 0;
+        try {
+            switch (cmd) {
+                case "PING":
+                    frame.put(BinaryCodec.PING);
+                    break;
+                case "CATALOG":
+                    frame.put(BinaryCodec.CATALOG);
+                    break;
+                case "REGISTER":
+                case "LOGIN":
+                    frame.put(cmd.equals("LOGIN") ? BinaryCodec.LOGIN : BinaryCodec.REGISTER);
+                    BinaryCodec.putString(frame, t[1]);
+                    BinaryCodec.putString(frame, t[2]);
+                    break;
+                case "LIST_AVAIL":
+                    cat = catalogCat(t[1]);
+                    frame.put(BinaryCodec.LIST_AVAIL);
+                    BinaryCodec.putVarint(frame, cat);
+                    BinaryCodec.putVarint(frame, startField(t[2]));
+                    BinaryCodec.putVarint(frame, Integer.parseInt(t[3]));
+                    break;
+                case "BOOK2":
+                case "HOLD": {
+                    cat = catalogCat(t[2]);
+                    int room = catalogRoom(cat, t[3].replace("_", " "));
+                    if (room < 0) {
+                        f.complete("ERR NO_AVAIL");
+                        return null;
+                    }
+                    frame.put(cmd.equals("HOLD") ? BinaryCodec.HOLD : BinaryCodec.BOOK);
+                    BinaryCodec.putString(frame, t[1]);
+                    BinaryCodec.putVarint(frame, cat);
+                    BinaryCodec.putVarint(frame, room);
+                    BinaryCodec.putVarint(frame, startField(t[4]));
+                    BinaryCodec.putVarint(frame, Integer.parseInt(t[5]));
+                    break;
+                }
+                case "BOOK_MULTI": {
+                    int n = (t.length - 2) / 4;
+                    if (n < 1 || t.length != 2 + 4 * n) throw new IllegalArgumentException("usage");
+                    frame.put(BinaryCodec.BOOK_MULTI);
+                    BinaryCodec.putString(frame, t[1]);
+                    BinaryCodec.putVarint(frame, n);
+                    for (int k = 2; k < t.length; k += 4) {
+                        int c = catalogCat(t[k]);
+                        int room = catalogRoom(c, t[k + 1].replace("_", " "));
+                        if (room < 0) {
+                            f.complete("ERR NO_AVAIL");
+                            return null;
+                        }
+                        BinaryCodec.putVarint(frame, c);
+                        BinaryCodec.putVarint(frame, room);
+                        BinaryCodec.putVarint(frame, startField(t[k + 2]));
+                        BinaryCodec.putVarint(frame, Integer.parseInt(t[k + 3]));
+                    }
+                    break;
+                }
+                case "MY_RES":
+                    frame.put(BinaryCodec.MY_RES);
+                    BinaryCodec.putString(frame, t[1]);
+                    break;
+                case "CANCEL":
+                case "CONFIRM":
+                case "RELEASE":
+                    frame.put(cmd.equals("CANCEL") ? BinaryCodec.CANCEL
+                            : cmd.equals("CONFIRM") ? BinaryCodec.CONFIRM : BinaryCodec.RELEASE);
+                    BinaryCodec.putString(frame, t[1]);
+                    BinaryCodec.putString(frame, t[2]);
+                    break;
+                default:
+                    f.complete("ERR UNKNOWN_COMMAND");
+                    return null;
+            }
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            f.complete("ERR BAD_REQUEST");
+            return null;
+        } catch (DateTimeParseException e) {
+            f.complete("ERR BAD_DATE");
+            return null;
+        }
+        if (frame.position() - BinaryCodec.HEADER > BinaryCodec.MAX_FRAME) {
+            f.complete("ERR BAD_REQUEST");  // the server would drop the connection
+            return null;
+        }
+        BinaryCodec.finishFrame(frame);
+        return new Call(f, frame.get(BinaryCodec.HEADER), cat);  // the opcode leads the payload
+    }
+
+    // unknown categories fall back to the first one, as on the server
+    private int catalogCat(String name) {
+        String[] cats = catalogCats;
+        for (int c = 0; c < cats.length; c++) {
+            if (cats[c].equalsIgnoreCase(name)) return c;
+        }
+        return 0;
+    }
+
+    private int catalogRoom(int cat, String name) {
+        if (cat >= catalogRooms.length) return -1;
+        String[] rooms = catalogRooms[cat];
+        for (int r = 0; r < rooms.length; r++) {
+            if (rooms[r].equalsIgnoreCase(name)) return r;
+        }
+        return -1;
+    }
+
+    // weekday 1..7 as is, otherwise the epoch day of an ISO date
+    private static long startField(String token) {
+        if (token.length() == 1 && token.charAt(0) >= '1' && token.charAt(0) <= '7') {
+            return token.charAt(0) - '0';
+        }
+        return LocalDate.parse(token).toEpochDay();
+    }
+
+    // ---- async / pipelined ----
+    public CompletableFuture<String> send(String line) {
+        return sendAll(List.of(line)).get(0);
+    }
+
+    // writes all commands with one flush; futures are in the same order as lines
+    public synchronized List<CompletableFuture<String>> sendAll(List<String> lines) {
+        List<CompletableFuture<String>> fs = new ArrayList<>(lines.size());
+        if (out == null) {
+            for (int i = 0; i < lines.size(); i++) {
+                fs.add(CompletableFuture.failedFuture(new IOException("Not connected to server")));
+            }
+            return fs;
+        }
+        if (binary) return sendFrames(lines, fs);
+        for (String line : lines) {
+            CompletableFuture<String> f = new CompletableFuture<>();
+            fs.add(f);
+            if (tagged) {
+                long id = nextId++;
+                inFlight.put(id, f);
+                out.print(id);
+                out.print(' ');
+            } else {
+                pending.add(f);
+            }
+            out.print(line);
+            out.print('\n');
+        }
+        out.flush();
+        return fs;
+    }
+
+    private List<CompletableFuture<String>> sendFrames(List<String> lines,
+                                                       List<CompletableFuture<String>> fs) {
+        try {
+            for (String line : lines) {
+                CompletableFuture<String> f = new CompletableFuture<>();
+                fs.add(f);
+                Call call = encode(line, f);
+                if (call == null) continue;
+                calls.add(call);
+                frameOut.write(frame.array(), frame.position(), frame.remaining());
+            }
+            frameOut.flush();
+        } catch (IOException e) {
+            for (CompletableFuture<String> f : fs) f.completeExceptionally(e);
+        }
+        return fs;
+    }
+
+    public CompletableFuture<String> listAvailAsync(String category, int start, int nights) {
+        return send(listAvailCommand(category, start, nights));
+    }
+
+    // several LIST_AVAIL queries in one write, e.g. every category for a date range
+    public List<CompletableFuture<String>> listAvailBatch(List<String> categories, int start, int nights) {
+        List<String> lines = new ArrayList<>(categories.size());
+        for (String c : categories) lines.add(listAvailCommand(c, start, nights));
+        return sendAll(lines);
+    }
+
+    public CompletableFuture<String> bookRoomAsync(String username, String category,
+                                                  String roomId, int start, int nights) {
+        return send("BOOK2 " + who(username) + " " + category + " " + roomId + " " + start + " " + nights);
+    }
+
+    // all stays or none, in one request; each stay is "CATEGORY ROOM_ID START NIGHTS"
+    public CompletableFuture<String> bookMultiAsync(String username, List<String> stays) {
+        return send(bookMultiCommand(username, stays));
+    }
+
+    // listener for "EVT subId +Room_id -Room_id ..." lines; runs on the reader thread
+    public void onEvent(Consumer<String> listener) {
+        events = listener;
+    }
+
+    // "OK SUBSCRIBED subId <free rooms CSV>"; changes then arrive through onEvent
+    public String subscribe(String category, int start, int nights) throws IOException {
+        return rpc("SUBSCRIBE " + category + " " + start + " " + nights);
+    }
+
+    public String unsubscribe(String subId) throws IOException {
+        return rpc("UNSUBSCRIBE " + subId);
+    }
+
+    // "OK HELD holdId ttlSeconds": the room is kept for this user until CONFIRM,
+    // RELEASE or the TTL
+    public CompletableFuture<String> holdRoomAsync(String username, String category,
+                                                  String roomId, int start, int nights) {
+        return send("HOLD " + who(username) + " " + category + " " + roomId + " " + start + " " + nights);
+    }
+
+    public CompletableFuture<String> myReservationsAsync(String username) {
+        return send("MY_RES " + who(username));
+    }
+
+    public CompletableFuture<String> cancelReservationAsync(String username, String resId) {
+        return send("CANCEL " + who(username) + " " + resId);
+    }
+
+    private String bookMultiCommand(String username, List<String> stays) {
+        return "BOOK_MULTI " + who(username) + " " + String.join(" ", stays);
+    }
+
+    // the session token if username is the one logged in on this connection
+    private String who(String username) {
+        String[] s = session;
+        return s != null && s[0].equalsIgnoreCase(username) ? s[1] : username;
+    }
+
+    private static String listAvailCommand(String category, int start, int nights) {
+        return "LIST_AVAIL " + category + " " + start + " " + nights;
     }
 
     private String rpc(String line) throws IOException {
         if (out == null || in == null) throw new IOException("Not connected to server");
-        out.println(line);
-        String resp = in.readLine();
-        if (resp == null) throw new IOException("Server closed connection");
-        return resp.trim();
+        try {
+            return send(line).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for server", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException(cause);
+        }
     }
 
     // ---- existing (used by GUI) ----
@@ -39,25 +502,44 @@ public class Client {
     }
 
     public String login(String u, String p) throws IOException {
-        return rpc("LOGIN " + u + " " + p);
+        String resp = rpc("LOGIN " + u + " " + p);
+        if (resp.startsWith("OK LOGIN @")) session = new String[] {u, resp.substring("OK LOGIN ".length())};
+        return resp;
     }
 
     public String listAvail(String category, int start, int nights) throws IOException {
-        return rpc("LIST_AVAIL " + category + " " + start + " " + nights);
+        return rpc(listAvailCommand(category, start, nights));
     }
 
     public String bookRoom(String username, String category,
                            String roomId, int start, int nights) throws IOException {
-        return rpc("BOOK2 " + username + " " + category + " " + roomId + " " + start + " " + nights);
+        return rpc("BOOK2 " + who(username) + " " + category + " " + roomId + " " + start + " " + nights);
+    }
+
+    public String holdRoom(String username, String category,
+                           String roomId, int start, int nights) throws IOException {
+        return rpc("HOLD " + who(username) + " " + category + " " + roomId + " " + start + " " + nights);
+    }
+
+    public String confirmHold(String username, String holdId) throws IOException {
+        return rpc("CONFIRM " + who(username) + " " + holdId);
+    }
+
+    public String releaseHold(String username, String holdId) throws IOException {
+        return rpc("RELEASE " + who(username) + " " + holdId);
+    }
+
+    public String bookMulti(String username, List<String> stays) throws IOException {
+        return rpc(bookMultiCommand(username, stays));
     }
 
     public String myReservations(String username) throws IOException {
-        return rpc("MY_RES " + username);
+        return rpc("MY_RES " + who(username));
     }
 
     // NEW: cancel reservation
     public String cancelReservation(String username, String resId) throws IOException {
-        return rpc("CANCEL " + username + " " + resId);
+        return rpc("CANCEL " + who(username) + " " + resId);
     }
 
     public void ping() throws IOException {
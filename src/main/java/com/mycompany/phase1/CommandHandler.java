@@ -0,0 +1,569 @@
+package com.mycompany.phase1;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+// Parses one protocol line and returns the response line.
+// Shared by the blocking (NewClient) and NIO (NioServer) engines; one per connection.
+// Lines are tokenized in place (CommandLine) and answered into a reused
+// ResponseBuffer, so PING, LIST_AVAIL and SHOW allocate nothing per request.
+//
+// v1 (default): one untagged response per line, in request order.
+// v2 (after "HELLO 2"): every request is "<id> COMMAND ...", runs concurrently with
+// the connection's other requests and is answered "<id> RESPONSE" when it finishes,
+// so a slow MY_RES does not hold up a PING sent after it. At most
+// -Dprotocol.maxInFlight (64) run at once per connection and as many more wait;
+// past that the engine stops reading the connection (saturated()).
+// "HELLO BIN" (v1 only) switches the connection to BinaryCodec frames once the
+// engine has written the reply; see binary().
+// SUBSCRIBE makes the server push "EVT ..." lines (see AvailabilityFeed) through
+// the engine's push sink at any time between responses; they are never tagged.
+// LOGIN opens a session (SessionTable) owned by this connection; its token can
+// replace the username in BOOK2, BOOK_MULTI, HOLD, CONFIRM, RELEASE, MY_RES and CANCEL.
+// HOLD keeps a room off the market for a short time (HoldTable) until CONFIRM books
+// it or RELEASE gives it back.
+public class CommandHandler {
+    private static final ExecutorService WORKERS = Executors.newVirtualThreadPerTaskExecutor();
+    private static final int MAX_IN_FLIGHT = Integer.getInteger("protocol.maxInFlight", 64);
+    private static final int MAX_SUBSCRIPTIONS = 16;
+
+    private final ServerState state;
+    private final Inventory inventory;
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+    private final Queue<Runnable> backlog = new ConcurrentLinkedQueue<>();  // v2 requests over the limit
+    private final AtomicInteger backlogged = new AtomicInteger();
+    private volatile Runnable resume = () -> {};
+    private volatile boolean tagged;
+    private volatile boolean binary;
+
+    private final Map<String, AvailabilityFeed.Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSubscription = new AtomicInteger();
+    private volatile Predicate<String> push = line -> false;
+    private final Set<String> sessionTokens = ConcurrentHashMap.newKeySet();
+
+    // v1 lines are answered on the reading thread, one at a time
+    private final CommandLine line = new CommandLine();
+    private final ResponseBuffer out = new ResponseBuffer();
+
+    public CommandHandler(ServerState state) {
+        this.state = state;
+        this.inventory = state.inventory();
+    }
+
+    // where the engine writes unsolicited lines; false once the connection is gone
+    public void setPush(Predicate<String> push) {
+        this.push = push;
+    }
+
+    // called (from a worker) when the backlog drops below the limit; see saturated()
+    public void setResume(Runnable resume) {
+        this.resume = resume;
+    }
+
+    // the engine calls this when the connection closes
+    public void close() {
+        backlog.clear();
+        unsubscribeAll();
+        for (String token : sessionTokens) state.sessions().close(token, this);
+        sessionTokens.clear();
+    }
+
+    private void unsubscribeAll() {
+        for (AvailabilityFeed.Subscription s : subscriptions.values()) state.availability().cancel(s);
+        subscriptions.clear();
+    }
+
+    // LOGIN succeeded on this connection (text or binary): a new session token
+    public String openSession(String user) {
+        String token = state.sessions().open(user, this);
+        sessionTokens.add(token);
+        return token;
+    }
+
+    // the user a USER argument stands for; null for a token that is not a live
+    // session of this connection (see SessionTable.resolve)
+    public String user(String arg) {
+        return state.sessions().resolve(arg, this);
+    }
+
+    // true once "HELLO BIN" was answered: the engine must read frames from now on
+    public boolean binary() {
+        return binary;
+    }
+
+    // Entry point for the engines: one line in buf[off, off + len), without '\n'.
+    // v1: answered here; returns the response line (ending in '\n') in a buffer
+    // reused for the next line, or null for a blank line. v2: answered through
+    // reply, possibly from another thread; returns null.
+    // v1 errors propagate to the engine, which drops the connection as before;
+    // v2 errors are answered per request.
+    public ResponseBuffer dispatch(byte[] buf, int off, int len, Consumer<String> reply) {
+        if (tagged) {
+            dispatch(new String(buf, off, len, StandardCharsets.UTF_8), reply);
+            return null;
+        }
+        out.clear();
+        if (!handle(line.reset(buf, off, len), out)) return null;
+        return out.append((byte) '\n');
+    }
+
+    public void dispatch(String line, Consumer<String> reply) {
+        if (!tagged) {
+            String resp = handle(line);
+            if (resp != null) reply.accept(resp);
+            return;
+        }
+
+        line = line.trim();
+        if (line.isEmpty()) return;
+        int sp = line.indexOf(' ');
+        if (sp < 0) {
+            reply.accept(line + " ERR usage: ID COMMAND ...");
+            return;
+        }
+        String id = line.substring(0, sp);
+        String request = line.substring(sp + 1);
+        // at the per-connection limit the request waits for a worker in backlog;
+        // the reading thread never answers it (under NioServer that is an event loop)
+        backlog.add(() -> answer(id, request, reply));
+        backlogged.incrementAndGet();
+        drain();
+    }
+
+    // Hands queued v2 requests to workers while there are free slots. Runs on the
+    // reading thread and on every worker that finishes, so none is left behind.
+    private void drain() {
+        while (!backlog.isEmpty() && inFlight.tryAcquire()) {
+            Runnable request = backlog.poll();
+            if (request == null) {
+                inFlight.release();
+                continue;
+            }
+            if (backlogged.decrementAndGet() == MAX_IN_FLIGHT - 1) resume.run();
+            WORKERS.execute(() -> {
+                try {
+                    request.run();
+                } finally {
+                    inFlight.release();
+                    drain();
+                }
+            });
+        }
+    }
+
+    // true while MAX_IN_FLIGHT v2 requests wait for a worker: the engine stops
+    // reading the connection until the resume hook runs and this is false again
+    public boolean saturated() {
+        return backlogged.get() >= MAX_IN_FLIGHT;
+    }
+
+    private void answer(String id, String request, Consumer<String> reply) {
+        String resp;
+        try {
+            resp = handle(request);
+        } catch (RuntimeException e) {
+            resp = "ERR BAD_REQUEST";
+        }
+        if (resp != null) reply.accept(id + " " + resp);
+    }
+
+    // returns null for blank lines (nothing to answer); used by v2 requests,
+    // which run concurrently and so cannot share the connection's buffers
+    public String handle(String request) {
+        byte[] b = request.getBytes(StandardCharsets.UTF_8);
+        ResponseBuffer resp = new ResponseBuffer();
+        return handle(new CommandLine().reset(b, 0, b.length), resp) ? resp.toString() : null;
+    }
+
+    // ---------- commands ----------
+    private static final int PING = 1, HELLO = 2, REGISTER = 3, LOGIN = 4, LIST_AVAIL = 5,
+            BOOK2 = 6, MY_RES = 7, CANCEL = 8, SHOW = 9, BOOK = 10, BOOK_MULTI = 11,
+            SUBSCRIBE = 12, UNSUBSCRIBE = 13, LOGOUT = 14, STATS = 15,
+            HOLD = 16, CONFIRM = 17, RELEASE = 18;
+    private static final String[] NAMES = {null, "PING", "HELLO", "REGISTER", "LOGIN",
+            "LIST_AVAIL", "BOOK2", "MY_RES", "CANCEL", "SHOW", "BOOK", "BOOK_MULTI",
+            "SUBSCRIBE", "UNSUBSCRIBE", "LOGOUT", "STATS", "HOLD", "CONFIRM", "RELEASE"};
+    private static final byte[][] NAME_BYTES = new byte[NAMES.length][];
+    private static final int[] SLOW = {LOGIN, REGISTER, BOOK2, BOOK_MULTI, CANCEL, CONFIRM};
+    private static final int[] TABLE = new int[32];  // hash -> command, open addressing
+    private static final byte[] BIN = {'B', 'I', 'N'};
+
+    static {
+        for (int c = 1; c < NAMES.length; c++) {
+            NAME_BYTES[c] = NAMES[c].getBytes(StandardCharsets.US_ASCII);
+            int h = 0;
+            for (byte b : NAME_BYTES[c]) h = 31 * h + b;
+            int slot = h & (TABLE.length - 1);
+            while (TABLE[slot] != 0) slot = (slot + 1) & (TABLE.length - 1);
+            TABLE[slot] = c;
+        }
+    }
+
+    // first token -> command code, 0 if unknown; case-insensitive
+    private static int command(CommandLine t) {
+        int h = 0;
+        for (int k = 0; k < t.length(0); k++) h = 31 * h + CommandLine.upper(t.byteAt(0, k));
+        for (int slot = h & (TABLE.length - 1); TABLE[slot] != 0; slot = (slot + 1) & (TABLE.length - 1)) {
+            if (t.matches(0, NAME_BYTES[TABLE[slot]], false)) return TABLE[slot];
+        }
+        return 0;
+    }
+
+    // LOGIN and REGISTER hash passwords on the auth pool, and the commands that
+    // change reservations wait for the log to reach the disk; the NIO engine
+    // answers them off its event loop (in v1 - a v2 line starts with its id)
+    public static boolean slow(byte[] buf, int off, int len) {
+        for (int c : SLOW) {
+            if (CommandLine.firstIs(buf, off, len, NAME_BYTES[c])) return true;
+        }
+        return false;
+    }
+
+    // unknown categories fall back to the first one, as before
+    private int category(CommandLine t, int i) {
+        for (int c = 0; c < inventory.categoryCount(); c++) {
+            if (t.matches(i, inventory.categoryBytes(c), false)) return c;
+        }
+        return 0;
+    }
+
+    // room ids travel with '_' for spaces; -1 if the category has no such room
+    private int room(CommandLine t, int i, int cat) {
+        for (int r = 0; r < inventory.roomCount(cat); r++) {
+            if (t.matches(i, inventory.roomIdBytes(cat, r), true)) return r;
+        }
+        return -1;
+    }
+
+    private static boolean is(CommandLine t, int i, char c) {
+        return t.length(i) == 1 && t.byteAt(i, 0) == c;
+    }
+
+    // writes the response (without '\n') into out; false for a blank line
+    private boolean handle(CommandLine t, ResponseBuffer out) {
+        try {
+            return respond(t, out);
+        } catch (UncheckedIOException e) {
+            // the change did not reach the disk and was undone (see ServerState)
+            out.clear().append("ERR SAVE_FAILED");
+            return true;
+        }
+    }
+
+    private boolean respond(CommandLine t, ResponseBuffer out) {
+        if (t.count() == 0) return false;
+
+        switch (command(t)) {
+            case PING:
+                out.append("OK PONG");
+                return true;
+
+            case HELLO: // HELLO version  (1 = plain, 2 = request ids, BIN = binary frames)
+                if (t.count() < 2) {
+                    out.append("ERR usage: HELLO version");
+                } else if (t.matches(1, BIN, false) && !tagged) {
+                    unsubscribeAll();  // events are text lines; they cannot follow into the frames
+                    binary = true;
+                    out.append("OK HELLO BIN");
+                } else if (is(t, 1, '2')) {
+                    tagged = true;
+                    out.append("OK HELLO 2");
+                } else if (is(t, 1, '1') && !tagged) {
+                    out.append("OK HELLO 1");
+                } else {
+                    out.append("ERR UNSUPPORTED_VERSION");
+                }
+                return true;
+
+            case REGISTER: // REGISTER username password
+                if (t.count() < 3) {
+                    out.append("ERR usage: REGISTER username password");
+                } else if (SessionTable.isToken(t.string(1))) {
+                    out.append("ERR BAD_USERNAME");  // would read as a session token
+                } else {
+                    try {
+                        out.append(state.register(t.string(1), t.string(2)) ? "OK REGISTERED" : "ERR USER_EXISTS");
+                    } catch (RejectedExecutionException e) {
+                        out.append("ERR BUSY");  // auth pool saturated
+                    }
+                }
+                return true;
+
+            case LOGIN: { // LOGIN username password -> OK LOGIN token
+                if (t.count() < 3) {
+                    out.append("ERR usage: LOGIN username password");
+                    return true;
+                }
+                String user = t.string(1);
+                boolean ok;
+                try {
+                    ok = state.login(user, t.string(2));
+                } catch (RejectedExecutionException e) {
+                    out.append("ERR BUSY");  // auth pool saturated
+                    return true;
+                }
+                if (ok) out.append("OK LOGIN ").append(openSession(user));
+                else if (state.userExists(user)) out.append("ERR BAD_CREDENTIALS");
+                else out.append("ERR NO_SUCH_USER");
+                return true;
+            }
+
+            // LIST_AVAIL <CATEGORY> <START 1..7 | yyyy-MM-dd> <NIGHTS>
+            case LIST_AVAIL: {
+                if (t.count() < 4) {
+                    out.append("ERR usage: LIST_AVAIL CAT START NIGHTS");
+                    return true;
+                }
+                int cat = category(t, 1);
+                long day = t.startDay(2, inventory);
+                if (day == Long.MIN_VALUE) {
+                    out.append("ERR BAD_DATE");
+                    return true;
+                }
+                int nights = t.intAt(3);
+                state.appendAvailableRooms(cat, day, nights, out.append("OK ROOMS "));
+                return true;
+            }
+
+            // BOOK2 username|token category roomId start nights
+            case BOOK2: {
+                if (t.count() < 6) {
+                    out.append("ERR usage: BOOK2 user cat room start nights");
+                    return true;
+                }
+                int cat = category(t, 2);
+                long day = t.startDay(4, inventory);
+                if (day == Long.MIN_VALUE) {
+                    out.append("ERR BAD_DATE");
+                    return true;
+                }
+                int n = t.intAt(5);
+                String user = user(t.string(1));
+                if (user == null) {
+                    out.append("ERR NO_SESSION");
+                    return true;
+                }
+                int room = room(t, 3, cat);
+                String resId = room < 0 ? null
+                        : state.reserve(user, cat, room, LocalDate.ofEpochDay(day), n);
+                if (resId != null) out.append("OK CONFIRMED ").append(resId);
+                else out.append("ERR NO_AVAIL");
+                return true;
+            }
+
+            // HOLD username|token category roomId start nights -> OK HELD holdId ttlSeconds
+            case HOLD: {
+                if (t.count() < 6) {
+                    out.append("ERR usage: HOLD user cat room start nights");
+                    return true;
+                }
+                int cat = category(t, 2);
+                long day = t.startDay(4, inventory);
+                if (day == Long.MIN_VALUE) {
+                    out.append("ERR BAD_DATE");
+                    return true;
+                }
+                int n = t.intAt(5);
+                String user = user(t.string(1));
+                if (user == null) {
+                    out.append("ERR NO_SESSION");
+                    return true;
+                }
+                int room = room(t, 3, cat);
+                try {
+                    String holdId = room < 0 ? null
+                            : state.hold(user, cat, room, LocalDate.ofEpochDay(day), n);
+                    if (holdId != null) out.append("OK HELD ").append(holdId).append((byte) ' ').append(HoldTable.ttlSeconds());
+                    else out.append("ERR NO_AVAIL");
+                } catch (IllegalStateException e) {
+                    out.append("ERR TOO_MANY_HOLDS");
+                }
+                return true;
+            }
+
+            // CONFIRM username|token holdId -> OK CONFIRMED resId
+            case CONFIRM: {
+                if (t.count() < 3) {
+                    out.append("ERR usage: CONFIRM user holdId");
+                    return true;
+                }
+                String user = user(t.string(1));
+                String resId = user == null ? null : state.confirmHold(user, t.string(2));
+                if (user == null) out.append("ERR NO_SESSION");
+                else if (resId != null) out.append("OK CONFIRMED ").append(resId);
+                else out.append("ERR NO_SUCH_HOLD");
+                return true;
+            }
+
+            // RELEASE username|token holdId
+            case RELEASE: {
+                if (t.count() < 3) {
+                    out.append("ERR usage: RELEASE user holdId");
+                    return true;
+                }
+                String user = user(t.string(1));
+                if (user == null) out.append("ERR NO_SESSION");
+                else out.append(state.releaseHold(user, t.string(2)) ? "OK RELEASED" : "ERR NO_SUCH_HOLD");
+                return true;
+            }
+
+            // BOOK_MULTI username|token cat room start nights [cat room start nights ...]
+            // all rooms or none: OK CONFIRMED id1,id2,...
+            case BOOK_MULTI: {
+                int n = (t.count() - 2) / 4;
+                if (n < 1 || t.count() != 2 + 4 * n) {
+                    out.append("ERR usage: BOOK_MULTI user cat room start nights ...");
+                    return true;
+                }
+                int[] cats = new int[n], rooms = new int[n], nights = new int[n];
+                long[] days = new long[n];
+                boolean unknownRoom = false;
+                for (int i = 0, k = 2; i < n; i++, k += 4) {
+                    cats[i] = category(t, k);
+                    days[i] = t.startDay(k + 2, inventory);
+                    if (days[i] == Long.MIN_VALUE) {
+                        out.append("ERR BAD_DATE");
+                        return true;
+                    }
+                    nights[i] = t.intAt(k + 3);
+                    rooms[i] = room(t, k + 1, cats[i]);
+                    unknownRoom |= rooms[i] < 0;
+                }
+                String user = user(t.string(1));
+                if (user == null) {
+                    out.append("ERR NO_SESSION");
+                    return true;
+                }
+                List<String> ids = unknownRoom ? null
+                        : state.reserveAll(user, cats, rooms, days, nights);
+                if (ids == null) {
+                    out.append("ERR NO_AVAIL");
+                    return true;
+                }
+                out.append("OK CONFIRMED ");
+                for (int i = 0; i < ids.size(); i++) {
+                    if (i > 0) out.append((byte) ',');
+                    out.append(ids.get(i));
+                }
+                return true;
+            }
+
+            // MY_RES username|token
+            case MY_RES: {
+                if (t.count() < 2) {
+                    out.append("ERR usage: MY_RES username");
+                    return true;
+                }
+                String user = user(t.string(1));
+                if (user == null) out.append("ERR NO_SESSION");
+                else state.appendReservations(user, out.append("OK RES "));
+                return true;
+            }
+
+            // CANCEL username|token resId
+            case CANCEL: {
+                if (t.count() < 3) {
+                    out.append("ERR usage: CANCEL username resId");
+                    return true;
+                }
+                String user = user(t.string(1));
+                if (user == null) out.append("ERR NO_SESSION");
+                else out.append(state.cancelReservation(user, t.string(2)) ? "OK CANCELED" : "ERR NO_SUCH_RES");
+                return true;
+            }
+
+            // LOGOUT token
+            case LOGOUT: {
+                if (t.count() < 2) {
+                    out.append("ERR usage: LOGOUT token");
+                    return true;
+                }
+                String token = t.string(1);
+                sessionTokens.remove(token);
+                out.append(state.sessions().close(token, this) ? "OK LOGGED_OUT" : "ERR NO_SESSION");
+                return true;
+            }
+
+            // STATS -> OK STATS list_avail=hits/misses my_res=hits/misses
+            case STATS: {
+                ResponseCache list = state.listAvailCache(), res = state.myResCache();
+                out.append("OK STATS list_avail=").append(list.hits()).append((byte) '/').append(list.misses())
+                   .append(" my_res=").append(res.hits()).append((byte) '/').append(res.misses());
+                return true;
+            }
+
+            // SUBSCRIBE <CATEGORY> <START> <NIGHTS> -> OK SUBSCRIBED subId <free rooms CSV>
+            case SUBSCRIBE: {
+                if (t.count() < 4) {
+                    out.append("ERR usage: SUBSCRIBE CAT START NIGHTS");
+                    return true;
+                }
+                int cat = category(t, 1);
+                long day = t.startDay(2, inventory);
+                if (day == Long.MIN_VALUE) {
+                    out.append("ERR BAD_DATE");
+                    return true;
+                }
+                int nights = t.intAt(3);
+                if (subscriptions.size() >= MAX_SUBSCRIPTIONS) {
+                    out.append("ERR TOO_MANY_SUBSCRIPTIONS");
+                    return true;
+                }
+                String id = "S" + nextSubscription.incrementAndGet();
+                AvailabilityFeed.Subscription sub = state.availability().subscribe(
+                        id, cat, day, nights, line -> push.test(line));
+                subscriptions.put(id, sub);
+                out.append("OK SUBSCRIBED ").append(id).append((byte) ' ').append(sub.snapshot());
+                return true;
+            }
+
+            // UNSUBSCRIBE subId
+            case UNSUBSCRIBE: {
+                if (t.count() < 2) {
+                    out.append("ERR usage: UNSUBSCRIBE subId");
+                    return true;
+                }
+                AvailabilityFeed.Subscription sub = subscriptions.remove(t.string(1));
+                if (sub == null) {
+                    out.append("ERR NO_SUCH_SUB");
+                    return true;
+                }
+                state.availability().cancel(sub);
+                out.append("OK UNSUBSCRIBED");
+                return true;
+            }
+
+            // old ones (بس عشان التوافق)
+            case SHOW:
+                if (t.count() < 2) {
+                    out.append("ERR usage: SHOW type");
+                } else {
+                    state.appendAvailableRooms(category(t, 1), inventory.nextWeekday(1), 1,
+                            out.append("OK ROOMS "));
+                }
+                return true;
+
+            case BOOK:
+                out.append("ERR USE_BOOK2");
+                return true;
+
+            default:
+                out.append("ERR UNKNOWN_COMMAND");
+                return true;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.mycompany.phase1;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+// One request line split into whitespace-separated tokens, in place: only token
+// boundaries are recorded, over bytes the caller keeps (the engine's line buffer).
+// Numbers, keywords, categories and room names are matched on the bytes; a token
+// becomes a String only when asked for one (usernames, passwords, ids).
+// One instance per connection, reused for every line.
+public final class CommandLine {
+    private byte[] buf;
+    private int[] start = new int[16];  // grown for long lines (BOOK_MULTI), then kept
+    private int[] end = new int[16];
+    private int count;
+
+    // splits buf[off, off + len) on ASCII whitespace, like split("\\s+") after trim()
+    public CommandLine reset(byte[] buf, int off, int len) {
+        this.buf = buf;
+        count = 0;
+        int i = off, to = off + len;
+        while (i < to) {
+            while (i < to && isSpace(buf[i])) i++;
+            if (i == to) break;
+            int s = i;
+            while (i < to && !isSpace(buf[i])) i++;
+            if (count == start.length) {
+                start = Arrays.copyOf(start, count * 2);
+                end = Arrays.copyOf(end, count * 2);
+            }
+            start[count] = s;
+            end[count] = i;
+            count++;
+        }
+        return this;
+    }
+
+    // first token of buf[off, off + len) is word (ASCII case-insensitive), without tokenizing
+    static boolean firstIs(byte[] buf, int off, int len, byte[] word) {
+        int i = off, to = off + len;
+        while (i < to && isSpace(buf[i])) i++;
+        if (to - i < word.length) return false;
+        for (int k = 0; k < word.length; k++) {
+            if (upper(buf[i + k]) != word[k]) return false;
+        }
+        i += word.length;
+        return i == to || isSpace(buf[i]);
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int length(int i) {
+        return end[i] - start[i];
+    }
+
+    public byte byteAt(int i, int pos) {
+        return buf[start[i] + pos];
+    }
+
+    public String string(int i) {
+        return new String(buf, start[i], end[i] - start[i], StandardCharsets.UTF_8);
+    }
+
+    // case-insensitive (ASCII) comparison with the UTF-8 bytes of a name;
+    // with underscores true, '_' in the token also matches ' ' (room ids on the wire)
+    public boolean matches(int i, byte[] name, boolean underscores) {
+        int s = start[i], len = end[i] - s;
+        if (len != name.length) return false;
+        for (int k = 0; k < len; k++) {
+            byte a = buf[s + k], b = name[k];
+            if (a == b) continue;
+            if (underscores && a == '_' && b == ' ') continue;
+            if (upper(a) != upper(b)) return false;
+        }
+        return true;
+    }
+
+    // ASCII upper case of one byte; used for keyword lookup as well
+    static byte upper(byte b) {
+        return b >= 'a' && b <= 'z' ? (byte) (b - 32) : b;
+    }
+
+    // Integer.parseInt without the String: same accepted forms, same exception
+    public int intAt(int i) {
+        int p = start[i], to = end[i];
+        boolean negative = false;
+        if (p < to && (buf[p] == '-' || buf[p] == '+')) negative = buf[p++] == '-';
+        if (p == to) throw new NumberFormatException("For input string: \"" + string(i) + "\"");
+        long v = 0;
+        for (; p < to; p++) {
+            int d = buf[p] - '0';
+            if (d < 0 || d > 9) throw new NumberFormatException("For input string: \"" + string(i) + "\"");
+            v = v * 10 + d;
+            if (v > (long) Integer.MAX_VALUE + 1) throw new NumberFormatException("For input string: \"" + string(i) + "\"");
+        }
+        v = negative ? -v : v;
+        if (v > Integer.MAX_VALUE) throw new NumberFormatException("For input string: \"" + string(i) + "\"");
+        return (int) v;
+    }
+
+    // START token: weekday 1..7 or yyyy-MM-dd, as epoch day; Long.MIN_VALUE if invalid
+    public long startDay(int i, Inventory inventory) {
+        int s = start[i], len = end[i] - s;
+        if (len == 1 && buf[s] >= '1' && buf[s] <= '7') return inventory.nextWeekday(buf[s] - '0');
+        if (len == 10 && buf[s + 4] == '-' && buf[s + 7] == '-') {
+            int y = digits(s, 4), m = digits(s + 5, 2), d = digits(s + 8, 2);
+            if (y >= 0 && m >= 0 && d >= 0) {
+                if (m < 1 || m > 12 || d < 1 || d > daysInMonth(y, m)) return Long.MIN_VALUE;
+                return epochDay(y, m, d);
+            }
+        }
+        LocalDate other = inventory.parseStart(string(i));  // rarer ISO forms
+        return other == null ? Long.MIN_VALUE : other.toEpochDay();
+    }
+
+    private static int daysInMonth(int y, int m) {
+        if (m == 2) return (y % 4 == 0 && (y % 100 != 0 || y % 400 == 0)) ? 29 : 28;
+        return m == 4 || m == 6 || m == 9 || m == 11 ? 30 : 31;
+    }
+
+    // days-from-civil (H. Hinnant): LocalDate.of(y, m, d).toEpochDay() without the object
+    private static long epochDay(int y, int m, int d) {
+        int yy = m <= 2 ? y - 1 : y;
+        int era = Math.floorDiv(yy, 400);
+        int yoe = yy - era * 400;
+        int doy = (153 * (m > 2 ? m - 3 : m + 9) + 2) / 5 + d - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+
+    private int digits(int from, int n) {
+        int v = 0;
+        for (int k = from; k < from + n; k++) {
+            int d = buf[k] - '0';
+            if (d < 0 || d > 9) return -1;
+            v = v * 10 + d;
+        }
+        return v;
+    }
+}
@@ -0,0 +1,61 @@
+package com.mycompany.phase1;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Two indexes under one lock: reservation id -> reservation (CANCEL and any
+// other lookup by id), and per user id -> reservation in booking order (MY_RES).
+// A reservation carries its room, start day and nights, i.e. the calendar slots
+// to release, so cancelling costs the same for 5 or 50,000 bookings.
+public class HeapReservationStore implements ReservationStore {
+    // insertion order, so forEach (and with it compaction) keeps booking order
+    private final Map<String, Reservation> byId = new LinkedHashMap<>();
+    private final Map<String, Map<String, Reservation>> byUser = new HashMap<>(); // username(lower, Locale.ROOT) -> id -> reservation
+
+    @Override
+    public synchronized void add(Reservation r) {
+        byId.put(r.getId(), r);
+        byUser.computeIfAbsent(r.getUsername().toLowerCase(Locale.ROOT), k -> new LinkedHashMap<>()).put(r.getId(), r);
+    }
+
+    @Override
+    public synchronized Reservation get(String resId) {
+        return byId.get(resId);
+    }
+
+    @Override
+    public synchronized List<Reservation> forUser(String username) {
+        Map<String, Reservation> own = byUser.get(username.toLowerCase(Locale.ROOT));
+        return own == null ? Collections.emptyList() : new ArrayList<>(own.values());
+    }
+
+    @Override
+    public synchronized Reservation remove(String username, String resId) {
+        Reservation r = byId.get(resId);
+        if (r == null) return null;
+        String key = r.getUsername().toLowerCase(Locale.ROOT);
+        if (!key.equals(username.toLowerCase(Locale.ROOT))) return null;
+
+        byId.remove(resId);
+        Map<String, Reservation> own = byUser.get(key);
+        own.remove(resId);
+        if (own.isEmpty()) byUser.remove(key);
+        return r;
+    }
+
+    // copies the references under the lock, then visits them without it
+    @Override
+    public void forEach(Consumer<Reservation> action) {
+        List<Reservation> all;
+        synchronized (this) {
+            all = new ArrayList<>(byId.values());
+        }
+        all.forEach(action);
+    }
+}
@@ -0,0 +1,157 @@
+package com.mycompany.phase1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Rooms held between LIST_AVAIL and booking. HOLD claims the nights in the room
+// calendar like BOOK2, so nobody else can book or list them, but writes nothing
+// to disk; CONFIRM turns the hold into a reservation. RELEASE, or
+// -Dhold.ttlSeconds (120) without CONFIRM, gives the nights back. A user has at
+// most -Dhold.maxPerUser (4) holds; holds do not survive a restart.
+//
+// Expiry is a hashed timer wheel: WHEEL slots of TICK_MS each, one thread empties
+// the slot of the current tick. A hold goes into the slot of its deadline tick;
+// one that is due a later turn round the wheel stays there until that turn.
+// Adding a hold is one list append, expiring it one step of the sweep, whatever
+// the number of holds. CONFIRM and RELEASE only take the hold out of the map;
+// the sweep drops such entries when it reaches them.
+public class HoldTable {
+    private static final long TICK_MS = 250;
+    private static final int WHEEL = 512;   // slots, a power of two: 128 s per turn
+    private static final long TTL_MS = Long.getLong("hold.ttlSeconds", 120) * 1000;
+    private static final int MAX_PER_USER = Integer.getInteger("hold.maxPerUser", 4);
+
+    private final Map<String, Hold> holds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> perUser = new ConcurrentHashMap<>();  // username(lower) -> live holds
+    private final List<List<Hold>> wheel;   // each slot guarded by itself
+    private final AtomicLong ids = new AtomicLong();
+    private final Consumer<Hold> expired;
+    private final long startedAt = System.nanoTime();  // not the wall clock: setting it moves no deadline
+    private volatile long tick;             // last tick swept
+
+    public static final class Hold {
+        final String id;
+        final String user;
+        final int cat, room;
+        final long day;
+        final int nights;
+        final long deadline;    // tick
+
+        Hold(String id, String user, int cat, int room, long day, int nights, long deadline) {
+            this.id = id;
+            this.user = user;
+            this.cat = cat;
+            this.room = room;
+            this.day = day;
+            this.nights = nights;
+            this.deadline = deadline;
+        }
+    }
+
+    private HoldTable(Consumer<Hold> expired) {
+        this.expired = expired;
+        wheel = new ArrayList<>(WHEEL);
+        for (int i = 0; i < WHEEL; i++) wheel.add(new ArrayList<>());
+    }
+
+    // expired is called once for every hold that ran out, on the wheel's thread
+    public static HoldTable start(Consumer<Hold> expired) {
+        HoldTable table = new HoldTable(expired);
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "hold-wheel");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(table::advance, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+        return table;
+    }
+
+    public static long ttlSeconds() {
+        return TTL_MS / 1000;
+    }
+
+    // Counts a hold against the user before the nights are claimed; false at the
+    // limit. Every true must be followed by add() or unreserve().
+    public boolean reserve(String username) {
+        boolean[] ok = {false};
+        perUser.compute(key(username), (k, n) -> {
+            int held = n == null ? 0 : n;
+            if (held >= MAX_PER_USER) return n;
+            ok[0] = true;
+            return held + 1;
+        });
+        return ok[0];
+    }
+
+    public void unreserve(String username) {
+        perUser.computeIfPresent(key(username), (k, n) -> n > 1 ? n - 1 : null);
+    }
+
+    // a hold for nights already claimed in the calendar; returns its id
+    public String add(String username, int cat, int room, long day, int nights) {
+        String id = "H" + Long.toString(ids.incrementAndGet(), 36);
+        long deadline = tick + (TTL_MS + TICK_MS - 1) / TICK_MS + 1;
+        Hold h = new Hold(id, username, cat, room, day, nights, deadline);
+        holds.put(id, h);
+        List<Hold> slot = wheel.get((int) (deadline & (WHEEL - 1)));
+        synchronized (slot) {
+            slot.add(h);
+        }
+        return id;
+    }
+
+    // Takes username's hold out of the table: the caller now owns its nights.
+    // null if there is no such hold, it belongs to someone else or it expired.
+    public Hold take(String username, String id) {
+        Hold h = holds.get(id);
+        if (h == null || !key(h.user).equals(key(username)) || !holds.remove(id, h)) return null;
+        unreserve(h.user);
+        return h;
+    }
+
+    public int size() {
+        return holds.size();
+    }
+
+    // Sweeps every tick up to the clock (more than one after a stall). Holds of a
+    // later turn go back into the slot.
+    private void advance() {
+        long now = (System.nanoTime() - startedAt) / TimeUnit.MILLISECONDS.toNanos(TICK_MS);
+        while (tick < now) {
+            long t = tick + 1;
+            List<Hold> slot = wheel.get((int) (t & (WHEEL - 1)));
+            List<Hold> due = new ArrayList<>();
+            synchronized (slot) {
+                slot.removeIf(h -> {
+                    if (holds.get(h.id) != h) return true;   // confirmed or released
+                    if (h.deadline > t) return false;        // a later turn
+                    due.add(h);
+                    return true;
+                });
+            }
+            tick = t;
+            for (Hold h : due) {
+                if (holds.remove(h.id, h)) {
+                    unreserve(h.user);
+                    try {
+                        expired.accept(h);
+                    } catch (RuntimeException e) {
+                        System.out.println("Hold expiry failed: " + e);
+                    }
+                }
+            }
+        }
+    }
+
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,401 @@
+package com.mycompany.phase1;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Rooms per category plus a dated calendar for each room.
+//
+// Every room owns `words` longs in one AtomicLongArray; bit (epochDay mod capacity)
+// is set while that night is booked. capacity is the horizon rounded up to whole
+// words plus one spare word, so the ring slots of days that just left the window
+// never alias days that can still be booked. Bookings set bits with CAS, one word
+// at a time in ascending order, and roll back on conflict, so a room can never be
+// double-booked and no lock is taken. Memory is rooms * words * 8 bytes.
+//
+// The same bits are kept transposed for LIST_AVAIL: per category and ring day, one
+// immutable row with one bit per room. ORing the nights of a stay gives the
+// booked rooms 64 at a time, so a query costs nights * ceil(rooms / 64) reads plus
+// one step per free room, without looking at every room's calendar.
+// A change replaces the row of each night it touches with a CAS on that day
+// alone (a copy of ceil(rooms / 64) longs), so bookings only meet on the same
+// category and night. Around its rows it counts itself started and then finished
+// in the category; a reader takes the rows of its stay while none is in between
+// (snapshot), so it sees one consistent state of every room and night without a
+// lock and without ever seeing half of another stay. The room calendar stays the
+// authority for booking; the rows follow it: published after a booking succeeded,
+// before a release, so they never show a booked night as free for longer than a
+// cancellation takes.
+public class Inventory {
+    public static final int DEFAULT_HORIZON = 400;
+    private static final int PAD = 8;          // longs per cache line
+    private static final int READ_TRIES = 32;  // before a reader settles for an unversioned view
+
+    private static final String[] DEFAULT_CATS = {"STANDARD", "PREMIUM", "SUITE"};
+    private static final String[][] DEFAULT_ROOM_IDS = {
+            {"Wadi Room 1","Wadi Room 2","Wadi Room 3","Wadi Room 4","Wadi Room 5"},
+            {"Oasis Room 1","Oasis Room 2","Oasis Room 3","Oasis Room 4","Oasis Room 5"},
+            {"Mountain Suite 1","Mountain Suite 2","Mountain Suite 3","Mountain Suite 4","Mountain Suite 5"}
+    };
+
+    private final String[] categories;
+    private final String[][] roomIds;   // [cat][room]
+    private final byte[][] categoryBytes;   // UTF-8 names, for parsing and writing lines
+    private final byte[][][] roomIdBytes;
+    private final int[] firstSlot;      // slot of room 0 of each category
+    private final int horizon;          // bookable days starting today
+    private final int words;            // longs per room
+    private final int capacity;         // days covered by the ring (words * 64)
+    private final AtomicLongArray bits;
+    private final AtomicReferenceArray<long[]> days;  // [cat * capacity + ring day] -> room bits
+    private final AtomicLongArray changes;  // per category: started, finished (a cache line apart)
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    private volatile long firstDay;     // epoch day of today, first bookable night
+    private volatile long nextRollAt;   // millis at which firstDay must advance
+
+    public Inventory(String[] categories, String[][] roomIds, int horizon) {
+        this.categories = categories;
+        this.roomIds = roomIds;
+        this.horizon = horizon;
+        this.words = (horizon + 63) / 64 + 1;
+        this.capacity = words * 64;
+
+        categoryBytes = new byte[categories.length][];
+        roomIdBytes = new byte[categories.length][][];
+        for (int c = 0; c < categories.length; c++) {
+            categoryBytes[c] = categories[c].getBytes(StandardCharsets.UTF_8);
+            roomIdBytes[c] = new byte[roomIds[c].length][];
+            for (int r = 0; r < roomIds[c].length; r++) {
+                roomIdBytes[c][r] = roomIds[c][r].getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        firstSlot = new int[categories.length];
+        int slots = 0;
+        for (int c = 0; c < categories.length; c++) {
+            firstSlot[c] = slots;
+            slots += roomIds[c].length;
+        }
+        bits = new AtomicLongArray(slots * words);
+
+        days = new AtomicReferenceArray<>(categories.length * capacity);
+        for (int c = 0; c < categories.length; c++) {
+            long[] empty = new long[(roomIds[c].length + 63) / 64];
+            for (int d = 0; d < capacity; d++) days.set(c * capacity + d, empty);
+        }
+        changes = new AtomicLongArray(categories.length * 2 * PAD);
+
+        LocalDate today = LocalDate.now(zone);
+        firstDay = today.toEpochDay();
+        nextRollAt = today.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    // rooms.txt: one "CATEGORY,Room name" per line; falls back to the built-in 3 x 5 rooms
+    public static Inventory load(File f, int horizon) {
+        if (!f.exists()) return new Inventory(DEFAULT_CATS, DEFAULT_ROOM_IDS, horizon);
+
+        Map<String, List<String>> rooms = new LinkedHashMap<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(f))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] p = line.split(",", 2);
+                if (p.length == 2 && !p[1].trim().isEmpty()) {
+                    rooms.computeIfAbsent(p[0].trim().toUpperCase(), k -> new ArrayList<>())
+                         .add(p[1].trim());
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading rooms: " + e.getMessage());
+        }
+        if (rooms.isEmpty()) return new Inventory(DEFAULT_CATS, DEFAULT_ROOM_IDS, horizon);
+
+        String[] cats = rooms.keySet().toArray(new String[0]);
+        String[][] ids = new String[cats.length][];
+        for (int c = 0; c < cats.length; c++) ids[c] = rooms.get(cats[c]).toArray(new String[0]);
+        return new Inventory(cats, ids, horizon);
+    }
+
+    // ---------- rooms ----------
+    public int categoryCount() { return categories.length; }
+    public String category(int cat) { return categories[cat]; }
+    public int roomCount(int cat) { return roomIds[cat].length; }
+    public String roomId(int cat, int room) { return roomIds[cat][room]; }
+    public byte[] categoryBytes(int cat) { return categoryBytes[cat]; }
+    public byte[] roomIdBytes(int cat, int room) { return roomIdBytes[cat][room]; }
+
+    public int catIndex(String cat) {
+        for (int c = 0; c < categories.length; c++) {
+            if (categories[c].equalsIgnoreCase(cat)) return c;
+        }
+        return -1;
+    }
+
+    public int roomIndex(int cat, String roomId) {
+        String[] ids = roomIds[cat];
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i].equalsIgnoreCase(roomId)) return i;
+        }
+        return -1;
+    }
+
+    // ---------- dates ----------
+    public LocalDate today() {
+        return LocalDate.ofEpochDay(todayEpochDay());
+    }
+
+    public int horizon() {
+        return horizon;
+    }
+
+    // "1".."7" = next Sunday..Saturday (today included), otherwise an ISO date
+    public LocalDate parseStart(String token) {
+        if (token.length() == 1 && token.charAt(0) >= '1' && token.charAt(0) <= '7') {
+            return LocalDate.ofEpochDay(nextWeekday(token.charAt(0) - '0'));
+        }
+        try {
+            return LocalDate.parse(token);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    // epoch day of the next Sunday..Saturday (guiDay 1..7), today included
+    public long nextWeekday(int guiDay) {
+        int dow = guiDay == 1 ? DayOfWeek.SUNDAY.getValue() : guiDay - 1;
+        long today = todayEpochDay();
+        int todayDow = (int) Math.floorMod(today + 3, 7L) + 1;  // 1970-01-01 was a Thursday
+        return today + Math.floorMod(dow - todayDow, 7);
+    }
+
+    // true if every night of the stay lies in [today, today + horizon)
+    public boolean inHorizon(long start, int nights) {
+        long first = todayEpochDay();
+        return nights >= 1 && start >= first && start + nights <= first + horizon;
+    }
+
+    // ---------- calendar ----------
+    public boolean isFree(int cat, int room, long start, int nights) {
+        int base = (firstSlot[cat] + room) * words;
+        long day = start;
+        int left = nights;
+        while (left > 0) {
+            int pos = (int) Math.floorMod(day, (long) capacity);
+            int bit = pos & 63;
+            int len = Math.min(left, 64 - bit);
+            if ((bits.get(base + (pos >>> 6)) & mask(bit, len)) != 0) return false;
+            day += len;
+            left -= len;
+        }
+        return true;
+    }
+
+    // books every night of the stay or none of them
+    public boolean tryBook(int cat, int room, long start, int nights) {
+        if (!inHorizon(start, nights)) return false;
+        int base = (firstSlot[cat] + room) * words;
+        long day = start;
+        int left = nights;
+        while (left > 0) {
+            int pos = (int) Math.floorMod(day, (long) capacity);
+            int bit = pos & 63;
+            int len = Math.min(left, 64 - bit);
+            if (!setBits(base + (pos >>> 6), mask(bit, len))) {
+                clear(base, start, (int) (day - start));
+                return false;
+            }
+            day += len;
+            left -= len;
+        }
+        // a day rolled over while we were booking: the first night is now in the past
+        if (start < firstDay) {
+            clear(base, start, nights);
+            return false;
+        }
+        markDays(cat, room, start, nights, true);
+        return true;
+    }
+
+    // frees the nights of a stay that are still inside the window
+    public void release(int cat, int room, long start, int nights) {
+        long first = todayEpochDay();
+        long from = Math.max(start, first);
+        long to = Math.min(start + nights, first + horizon);
+        if (from >= to) return;
+        markDays(cat, room, from, (int) (to - from), false);
+        clear((firstSlot[cat] + room) * words, from, (int) (to - from));
+    }
+
+    // startup replay: marks whatever part of the stay falls inside the window
+    public void markBooked(int cat, int room, long start, int nights) {
+        long first = todayEpochDay();
+        long from = Math.max(start, first);
+        long to = Math.min(start + nights, first + horizon);
+        int base = (firstSlot[cat] + room) * words;
+        for (long day = from; day < to; ) {
+            int pos = (int) Math.floorMod(day, (long) capacity);
+            int bit = pos & 63;
+            int len = (int) Math.min(to - day, 64 - bit);
+            long m = mask(bit, len);
+            int idx = base + (pos >>> 6);
+            while (true) {
+                long cur = bits.get(idx);
+                if (bits.compareAndSet(idx, cur, cur | m)) break;
+            }
+            day += len;
+        }
+        if (from < to) markDays(cat, room, from, (int) (to - from), true);
+    }
+
+    // ---------- LIST_AVAIL index ----------
+    // The category's rooms over the nights of a stay as of now; stays valid (and
+    // unchanged) forever. A writer is at most a few CASes long, so the reader
+    // waits for a moment without one; if the category stays that busy for
+    // READ_TRIES rounds it takes the rows as they are, version -1.
+    public Snapshot snapshot(int cat, long start, int nights) {
+        long[][] stay = new long[nights][];
+        int base = cat * capacity;
+        for (int tries = 0; ; tries++) {
+            long done = changes.get(finished(cat));
+            boolean quiet = changes.get(started(cat)) == done;
+            for (int i = 0; i < nights; i++) {
+                stay[i] = days.get(base + (int) Math.floorMod(start + i, (long) capacity));
+            }
+            if (quiet && changes.get(started(cat)) == done) return new Snapshot(done, roomIds[cat].length, stay);
+            if (tries == READ_TRIES) return new Snapshot(-1, roomIds[cat].length, stay);
+            Thread.yield();  // the writer may be waiting for this core
+        }
+    }
+
+    public static final class Snapshot {
+        private final long version;     // changes of the category published before it
+        private final int rooms;
+        private final long[][] nights;  // one row per night of the stay; rows are never written
+
+        private Snapshot(long version, int rooms, long[][] nights) {
+            this.version = version;
+            this.rooms = rooms;
+            this.nights = nights;
+        }
+
+        // -1 if the nights may come from different moments: answer from it, do not cache it
+        public long version() {
+            return version;
+        }
+
+        public int roomWords() {
+            return (rooms + 63) / 64;
+        }
+
+        // rooms 64 * w .. 64 * w + 63 that are free for the whole stay, one bit each
+        public long freeRooms(int w) {
+            int n = Math.min(64, rooms - (w << 6));
+            long valid = n == 64 ? -1L : (1L << n) - 1;
+            long booked = 0;
+            for (int i = 0; i < nights.length && booked != valid; i++) booked |= nights[i][w];
+            return ~booked & valid;
+        }
+    }
+
+    private static int started(int cat) {
+        return cat * 2 * PAD;
+    }
+
+    private static int finished(int cat) {
+        return cat * 2 * PAD + PAD;
+    }
+
+    private void markDays(int cat, int room, long start, int nights, boolean booked) {
+        int w = room >>> 6;
+        long m = 1L << (room & 63);
+        changes.incrementAndGet(started(cat));
+        try {
+            for (long day = start, end = start + nights; day < end; day++) {
+                int idx = cat * capacity + (int) Math.floorMod(day, (long) capacity);
+                while (true) {
+                    long[] cur = days.get(idx);
+                    long[] row = cur.clone();
+                    row[w] = booked ? row[w] | m : row[w] & ~m;
+                    if (days.compareAndSet(idx, cur, row)) break;
+                }
+            }
+        } finally {
+            changes.incrementAndGet(finished(cat));
+        }
+    }
+
+    private boolean setBits(int idx, long m) {
+        while (true) {
+            long cur = bits.get(idx);
+            if ((cur & m) != 0) return false;
+            if (bits.compareAndSet(idx, cur, cur | m)) return true;
+        }
+    }
+
+    private void clear(int base, long start, int nights) {
+        long day = start;
+        int left = nights;
+        while (left > 0) {
+            int pos = (int) Math.floorMod(day, (long) capacity);
+            int bit = pos & 63;
+            int len = Math.min(left, 64 - bit);
+            long m = mask(bit, len);
+            int idx = base + (pos >>> 6);
+            while (true) {
+                long cur = bits.get(idx);
+                if (bits.compareAndSet(idx, cur, cur & ~m)) break;
+            }
+            day += len;
+            left -= len;
+        }
+    }
+
+    private static long mask(int bit, int len) {
+        return (len == 64 ? -1L : (1L << len) - 1) << bit;
+    }
+
+    // ---------- rolling window ----------
+    private long todayEpochDay() {
+        if (System.currentTimeMillis() >= nextRollAt) roll();
+        return firstDay;
+    }
+
+    // Advances the window one day at a time: publish the new first day, then
+    // clear the ring slot of the day that just left it in every room.
+    private synchronized void roll() {
+        LocalDate today = LocalDate.now(zone);
+        long target = today.toEpochDay();
+        int slots = bits.length() / words;
+        while (firstDay < target) {
+            long gone = firstDay;
+            firstDay = gone + 1;
+            int pos = (int) Math.floorMod(gone, (long) capacity);
+            long m = mask(pos & 63, 1);
+            for (int s = 0; s < slots; s++) {
+                int idx = s * words + (pos >>> 6);
+                while (true) {
+                    long cur = bits.get(idx);
+                    if (bits.compareAndSet(idx, cur, cur & ~m)) break;
+                }
+            }
+            for (int c = 0; c < categories.length; c++) {
+                changes.incrementAndGet(started(c));
+                days.set(c * capacity + pos, new long[(roomIds[c].length + 63) / 64]);
+                changes.incrementAndGet(finished(c));
+            }
+        }
+        nextRollAt = today.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+}
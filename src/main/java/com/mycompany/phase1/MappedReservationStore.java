@@ -0,0 +1,269 @@
+package com.mycompany.phase1;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Off-heap reservation store. Reservations are 56-byte records appended to a
+// memory-mapped scratch file (rebuilt from the snapshot + log on every start):
+//    0 u8  id length        1 id bytes (max 31, UTF-8)
+//   32 int user code       36 u8 category       37 u8 flags (1 = live)
+//   38 u16 room number     40 int epoch day     44 u16 nights
+//   48 long previous record of the same user (-1 = none)
+// Each user's reservations form a linked list through `previous`, headed from a
+// small on-heap map; an open-addressing hash table in a second mapped file maps
+// reservation id -> record. Cancelling only clears the live flag, so the heap
+// holds one entry per user, not per reservation; the dead record keeps its index
+// slot until the next rebuild and lookups step over it, so an id that is added
+// again (a cancel undone, see ServerState) finds its new record.
+public class MappedReservationStore implements ReservationStore {
+    private static final int RECORD = 56;
+    private static final int SEGMENT_SHIFT = 20;                 // 1M records per mapping
+    private static final int PER_SEGMENT = 1 << SEGMENT_SHIFT;
+    private static final long SEGMENT_BYTES = (long) RECORD * PER_SEGMENT;
+    private static final int MAX_ID = 31;
+
+    private static final int ID_LEN = 0, ID = 1, USER = 32, CAT = 36, FLAGS = 37,
+            ROOM = 38, DAY = 40, NIGHTS = 44, PREV = 48;
+    private static final byte LIVE = 1;
+
+    private final Inventory inventory;
+    private final FileChannel data;
+    private final File indexBase;
+
+    // published for lock-free forEach: write the record, then bump count
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private volatile String[] names = new String[16];  // user code -> username as booked
+    private volatile long count;
+
+    private final Map<String, UserChain> users = new HashMap<>();  // username(lower, Locale.ROOT) -> chain
+    private int userCount;
+
+    private MappedByteBuffer slots;  // record index + 1 per slot, 0 = empty
+    private int slotMask;
+    private long slotsUsed;
+    private int indexGeneration;
+
+    private static final class UserChain {
+        final int code;
+        long head = -1;
+
+        UserChain(int code) {
+            this.code = code;
+        }
+    }
+
+    public MappedReservationStore(File dataFile, File indexBase, Inventory inventory) {
+        this.inventory = inventory;
+        this.indexBase = indexBase;
+        try {
+            data = FileChannel.open(dataFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            rebuildIndex(1 << 16);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void add(Reservation r) {
+        byte[] id = r.getId().getBytes(StandardCharsets.UTF_8);
+        if (id.length > MAX_ID) throw new IllegalArgumentException("reservation id too long: " + r.getId());
+        int cat = Math.max(0, inventory.catIndex(r.getRoom().getType()));
+        int number = r.getRoom().getNumber();
+        int nights = r.getNights();
+        if (cat > 0xFF || number < 0 || number > 0xFFFF || nights < 0 || nights > 0xFFFF) {
+            throw new IllegalArgumentException("reservation does not fit a record: " + r.getId());
+        }
+
+        String key = r.getUsername().toLowerCase(Locale.ROOT);
+        UserChain chain = users.get(key);
+        if (chain == null) {
+            chain = new UserChain(userCount);
+            users.put(key, chain);
+            if (userCount == names.length) names = Arrays.copyOf(names, userCount * 2);
+            names[userCount++] = r.getUsername();
+        }
+
+        long rec = count;
+        try {
+            MappedByteBuffer seg = segmentFor(rec);
+            int off = offset(rec);
+            seg.put(off + ID_LEN, (byte) id.length);
+            seg.put(off + ID, id);
+            seg.putInt(off + USER, chain.code);
+            seg.put(off + CAT, (byte) cat);
+            seg.putShort(off + ROOM, (short) number);
+            seg.putInt(off + DAY, (int) r.getDate().toEpochDay());
+            seg.putShort(off + NIGHTS, (short) nights);
+            seg.putLong(off + PREV, chain.head);
+            seg.put(off + FLAGS, LIVE);
+
+            chain.head = rec;
+            if ((slotsUsed + 1) * 2 > slotMask + 1) rebuildIndex((slotMask + 1) * 2);
+            insert(id, rec);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        count = rec + 1;
+    }
+
+    @Override
+    public synchronized List<Reservation> forUser(String username) {
+        UserChain chain = users.get(username.toLowerCase(Locale.ROOT));
+        if (chain == null) return Collections.emptyList();
+
+        List<Reservation> out = new ArrayList<>();
+        for (long rec = chain.head; rec >= 0; ) {
+            MappedByteBuffer seg = segments[segment(rec)];
+            int off = offset(rec);
+            if (seg.get(off + FLAGS) == LIVE) out.add(read(seg, off, names));
+            rec = seg.getLong(off + PREV);
+        }
+        Collections.reverse(out);  // booking order
+        return out;
+    }
+
+    @Override
+    public synchronized Reservation get(String resId) {
+        long rec = lookup(resId.getBytes(StandardCharsets.UTF_8));
+        if (rec < 0) return null;
+        MappedByteBuffer seg = segments[segment(rec)];
+        int off = offset(rec);
+        return seg.get(off + FLAGS) == LIVE ? read(seg, off, names) : null;
+    }
+
+    @Override
+    public synchronized Reservation remove(String username, String resId) {
+        UserChain chain = users.get(username.toLowerCase(Locale.ROOT));
+        if (chain == null) return null;
+
+        byte[] id = resId.getBytes(StandardCharsets.UTF_8);
+        long rec = lookup(id);
+        if (rec < 0) return null;
+        MappedByteBuffer seg = segments[segment(rec)];
+        int off = offset(rec);
+        if (seg.get(off + FLAGS) != LIVE || seg.getInt(off + USER) != chain.code) return null;
+
+        seg.put(off + FLAGS, (byte) 0);
+        return read(seg, off, names);
+    }
+
+    // absolute reads only, so this can walk the file while add/remove run
+    @Override
+    public void forEach(Consumer<Reservation> action) {
+        long n = count;
+        MappedByteBuffer[] segs = segments;
+        String[] userNames = names;
+        for (long rec = 0; rec < n; rec++) {
+            MappedByteBuffer seg = segs[segment(rec)];
+            int off = offset(rec);
+            if (seg.get(off + FLAGS) == LIVE) action.accept(read(seg, off, userNames));
+        }
+    }
+
+    private Reservation read(MappedByteBuffer seg, int off, String[] userNames) {
+        byte[] id = new byte[seg.get(off + ID_LEN)];
+        seg.get(off + ID, id);
+        int cat = seg.get(off + CAT) & 0xFF;
+        int number = seg.getShort(off + ROOM) & 0xFFFF;
+        return new Reservation(new String(id, StandardCharsets.UTF_8),
+                userNames[seg.getInt(off + USER)],
+                new Room(inventory.roomId(cat, number - 1), inventory.category(cat), number),
+                LocalDate.ofEpochDay(seg.getInt(off + DAY)),
+                seg.getShort(off + NIGHTS) & 0xFFFF);
+    }
+
+    // ---------- records ----------
+    private static int segment(long rec) {
+        return (int) (rec >>> SEGMENT_SHIFT);
+    }
+
+    private static int offset(long rec) {
+        return (int) (rec & (PER_SEGMENT - 1)) * RECORD;
+    }
+
+    private MappedByteBuffer segmentFor(long rec) throws IOException {
+        int s = segment(rec);
+        MappedByteBuffer[] segs = segments;
+        if (s < segs.length) return segs[s];
+        MappedByteBuffer[] grown = Arrays.copyOf(segs, s + 1);
+        grown[s] = data.map(FileChannel.MapMode.READ_WRITE, s * SEGMENT_BYTES, SEGMENT_BYTES);
+        segments = grown;
+        return grown[s];
+    }
+
+    // ---------- id index ----------
+    private static int hash(byte[] id) {
+        int h = Arrays.hashCode(id);
+        return h ^ (h >>> 16);
+    }
+
+    private void insert(byte[] id, long rec) {
+        int i = hash(id) & slotMask;
+        while (slots.getLong(i * 8) != 0) i = (i + 1) & slotMask;
+        slots.putLong(i * 8, rec + 1);
+        slotsUsed++;
+    }
+
+    // the live record with this id, or -1
+    private long lookup(byte[] id) {
+        int i = hash(id) & slotMask;
+        while (true) {
+            long v = slots.getLong(i * 8);
+            if (v == 0) return -1;
+            if (liveWithId(v - 1, id)) return v - 1;
+            i = (i + 1) & slotMask;
+        }
+    }
+
+    private boolean liveWithId(long rec, byte[] id) {
+        MappedByteBuffer seg = segments[segment(rec)];
+        int off = offset(rec);
+        if (seg.get(off + FLAGS) != LIVE || seg.get(off + ID_LEN) != id.length) return false;
+        for (int i = 0; i < id.length; i++) {
+            if (seg.get(off + ID + i) != id[i]) return false;
+        }
+        return true;
+    }
+
+    // maps a fresh, larger table and re-inserts the live records into it;
+    // a new file per generation so the old mapping is never truncated under us
+    private void rebuildIndex(int capacity) throws IOException {
+        File next = new File(indexBase.getPath() + "." + (indexGeneration + 1));
+        try (FileChannel ch = FileChannel.open(next.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            slots = ch.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * 8);
+        }
+        slotMask = capacity - 1;
+        slotsUsed = 0;
+        Files.deleteIfExists(new File(indexBase.getPath() + "." + indexGeneration).toPath());
+        indexGeneration++;
+
+        byte[] id = new byte[MAX_ID];
+        for (long rec = 0; rec < count; rec++) {
+            MappedByteBuffer seg = segments[segment(rec)];
+            int off = offset(rec);
+            if (seg.get(off + FLAGS) != LIVE) continue;
+            int len = seg.get(off + ID_LEN);
+            seg.get(off + ID, id, 0, len);
+            insert(Arrays.copyOf(id, len), rec);
+        }
+    }
+}
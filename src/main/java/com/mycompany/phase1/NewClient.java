@@ -2,135 +2,120 @@ package com.mycompany.phase1;
 
 import java.io.*;
 import java.net.Socket;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
 
 public class NewClient implements Runnable {
+    private static final int MAX_LINE = 8 * 1024;
+
     private final Socket client;
-    private final BufferedReader in;
-    private final PrintWriter out;
-    private final ArrayList<NewClient> clients; // ممكن ما نستخدمه الآن لكن نتركه
+    private final InputStream in;
+    private final OutboundBuffer out; // bounded; v2 replies and events come from other threads
+    private final Set<NewClient> clients; // registry of live connections
+    private final CommandHandler handler;
     private final ServerState state;
+    private Thread reader;
+
+    // lines are cut straight out of the read buffer, no String per line
+    private final byte[] inBuf = new byte[MAX_LINE];
+    private int inPos, inLimit;
+    private final byte[] lineBuf = new byte[MAX_LINE];
 
-    public NewClient(Socket socket, ArrayList<NewClient> clients, ServerState state)
+    public NewClient(Socket socket, Set<NewClient> clients, ServerState state)
             throws IOException {
         this.client = socket;
         this.clients = clients;
         this.state = state;
-        this.in  = new BufferedReader(
-                new InputStreamReader(client.getInputStream(), "UTF-8"));
-        this.out = new PrintWriter(
-                new OutputStreamWriter(client.getOutputStream(), "UTF-8"), true);
+        this.handler = new CommandHandler(state);
+        this.handler.setPush(this::push);
+        this.handler.setResume(() -> LockSupport.unpark(reader));
+        this.in  = client.getInputStream();
+        this.out = OutboundBuffer.open(client);
     }
 
     @Override
     public void run() {
+        reader = Thread.currentThread();
         try {
-            String line;
-            while ((line = in.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty()) continue;
-
-                String[] t = line.split("\\s+");
-                String cmd = t[0].toUpperCase();
-
-                switch (cmd) {
-                    case "PING":
-                        out.println("OK PONG");
-                        break;
-
-                    case "REGISTER": // REGISTER username password
-                        if (t.length < 3) {
-                            out.println("ERR usage: REGISTER username password");
-                            break;
-                        }
-                        out.println(state.register(t[1], t[2])
-                                ? "OK REGISTERED" : "ERR USER_EXISTS");
-                        break;
-
-                    case "LOGIN": // LOGIN username password
-                        if (t.length < 3) {
-                            out.println("ERR usage: LOGIN username password");
-                            break;
-                        }
-                        if (state.login(t[1], t[2])) {
-                            out.println("OK LOGIN");
-                        } else if (state.userExists(t[1])) {
-                            out.println("ERR BAD_CREDENTIALS");
-                        } else {
-                            out.println("ERR NO_SUCH_USER");
-                        }
-                        break;
-
-                    // LIST_AVAIL <CATEGORY> <STARTDAY 1..7> <NIGHTS 1..7>
-                    case "LIST_AVAIL":
-                        if (t.length < 4) {
-                            out.println("ERR usage: LIST_AVAIL CAT START NIGHTS");
-                            break;
-                        }
-                        String cat = t[1];
-                        int start = Integer.parseInt(t[2]);
-                        int nights = Integer.parseInt(t[3]);
-                        String csv = state.listAvailableRoomsCsv(cat, start, nights);
-                        out.println("OK ROOMS " + csv);
-                        break;
-
-                    // BOOK2 username category roomId start nights
-                    case "BOOK2":
-                        if (t.length < 6) {
-                            out.println("ERR usage: BOOK2 user cat room start nights");
-                            break;
-                        }
-                        String user = t[1];
-                        String category = t[2];
-                        String roomId = t[3].replace("_", " ");  // restore original room name
-                        int s = Integer.parseInt(t[4]), n = Integer.parseInt(t[5]);
-                        String resId = state.reserve(user, category, roomId, s, n);
-                        out.println(resId != null
-                                ? ("OK CONFIRMED " + resId)
-                                : "ERR NO_AVAIL");
-                        break;
+            int len;
+            while ((len = readLine()) >= 0) {
+                ResponseBuffer resp = handler.dispatch(lineBuf, 0, len, this::replyLine);
+                // blocks while the client is not reading its responses (high watermark)
+                if (resp != null) out.write(resp.array(), 0, resp.size());
+                // and while its v2 requests fill the handler's backlog
+                while (handler.saturated()) LockSupport.park(this);
+                if (handler.binary()) {
+                    runBinary();
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("Client disconnected: " + e.getMessage());
+        } finally {
+            close();
+        }
+    }
 
-                    // MY_RES username
-                    case "MY_RES":
-                        if (t.length < 2) {
-                            out.println("ERR usage: MY_RES username");
-                            break;
-                        }
-                        out.println("OK RES " + state.reservationsCsvFor(t[1]));
-                        break;
+    // v2 responses, from any thread
+    private void replyLine(String resp) {
+        push(resp);  // on failure the reading thread sees the broken socket
+    }
 
-                    // NEW: CANCEL username resId
-                    case "CANCEL":
-                        if (t.length < 3) {
-                            out.println("ERR usage: CANCEL username resId");
-                            break;
-                        }
-                        String uname = t[1];
-                        String rid   = t[2];
-                        boolean ok = state.cancelReservation(uname, rid);
-                        out.println(ok ? "OK CANCELED" : "ERR NO_SUCH_RES");
-                        break;
+    // any line from any thread (v2 responses, SUBSCRIBE events); never blocks,
+    // false if the connection is gone or was closed for exceeding its output limit
+    private boolean push(String line) {
+        return out.offer((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
 
-                    // old ones (بس عشان التوافق)
-                    case "SHOW":
-                        if (t.length < 2) {
-                            out.println("ERR usage: SHOW type");
-                            break;
-                        }
-                        out.println("OK ROOMS " +
-                                state.listAvailableRoomsCsv(t[1], 1, 1));
-                        break;
+    // next line (without "\n") into lineBuf; its length, or -1 at end of stream
+    private int readLine() throws IOException {
+        int len = 0;
+        while (true) {
+            if (inPos == inLimit) {
+                int n = in.read(inBuf, 0, inBuf.length);
+                if (n < 0) return len > 0 ? len : -1;  // last line without '\n'
+                inPos = 0;
+                inLimit = n;
+            }
+            byte b = inBuf[inPos++];
+            if (b == '\n') return len;
+            if (len == MAX_LINE) throw new IOException("line too long");
+            lineBuf[len++] = b;
+        }
+    }
 
-                    case "BOOK":
-                        out.println("ERR USE_BOOK2");
-                        break;
+    // BinaryCodec frames, answered in order; bytes already read past the
+    // "HELLO BIN" line are the start of the first frame
+    private void runBinary() throws IOException {
+        InputStream raw = new SequenceInputStream(
+                new ByteArrayInputStream(inBuf, inPos, inLimit - inPos),
+                new BufferedInputStream(in));
+        BinaryProtocol protocol = new BinaryProtocol(state, handler);
+        byte[] frame = new byte[256];
+        ByteBuffer req = ByteBuffer.wrap(frame);
 
-                    default:
-                        out.println("ERR UNKNOWN_COMMAND");
-                }
+        int len;
+        while ((len = BinaryCodec.readFrameLength(raw)) >= 0) {
+            if (len > frame.length) {
+                frame = new byte[Math.max(len, frame.length * 2)];
+                req = ByteBuffer.wrap(frame);
             }
-        } catch (Exception e) {
-            System.out.println("Client disconnected: " + e.getMessage());
+            if (raw.readNBytes(frame, 0, len) < len) throw new EOFException("connection closed inside a frame");
+            req.clear().limit(len);
+
+            ByteBuffer resp = protocol.handle(req);
+            out.write(resp.array(), resp.position(), resp.remaining());
         }
     }
+
+    // drop this handler from the registry and release the socket
+    // once the responses already queued have gone out
+    private void close() {
+        handler.close();
+        clients.remove(this);
+        out.closeWhenDrained();
+        System.out.println("Connection closed (" + clients.size() + " live)");
+    }
 }
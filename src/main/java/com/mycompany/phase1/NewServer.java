@@ -1,26 +1,61 @@
-
 package com.mycompany.phase1;
 
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class NewServer {
-    private static ArrayList<NewClient> clients = new ArrayList<>();
+    // live handlers only: each NewClient removes itself when its socket closes
+    private static final Set<NewClient> clients = ConcurrentHashMap.newKeySet();
     private static ServerState state = new ServerState();
 
+    // -Dserver.engine=blocking (default) | nio ; -Dnio.loops=N event loops for nio
+    // -Dserver.executor=virtual (default) | pool ; -Dserver.threads=N for the pool size
     public static void main(String[] args) throws IOException {
+        if (System.getProperty("server.engine", "blocking").equalsIgnoreCase("nio")) {
+            int loops = Integer.getInteger("nio.loops",
+                    Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+            new NioServer(9090, state, loops).start();
+            return;
+        }
+
+        ExecutorService executor = createExecutor();
         ServerSocket serverSocket = new ServerSocket(9090);
         System.out.println("Server running on port 9090");
 
+        Runtime.getRuntime().addShutdownHook(new Thread(executor::shutdownNow));
+
         while (true) {
-            System.out.println("Waiting for client connection");
             Socket client = serverSocket.accept();
-            System.out.println("Connected to client");
-            NewClient clientThread = new NewClient(client, clients, state);
-            clients.add(clientThread);
-            new Thread(clientThread).start();
+            try {
+                NewClient clientThread = new NewClient(client, clients, state);
+                clients.add(clientThread);
+                executor.execute(clientThread);
+                System.out.println("Connected to client (" + connectionCount() + " live)");
+            } catch (IOException e) {
+                System.out.println("Failed to accept client: " + e.getMessage());
+                try { client.close(); } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    public static int connectionCount() {
+        return clients.size();
+    }
+
+    private static ExecutorService createExecutor() {
+        String mode = System.getProperty("server.executor", "virtual");
+        if (mode.equalsIgnoreCase("pool")) {
+            int threads = Integer.getInteger("server.threads",
+                    Runtime.getRuntime().availableProcessors() * 16);
+            System.out.println("Using bounded pool of " + threads + " threads");
+            return Executors.newFixedThreadPool(threads);
         }
+        System.out.println("Using virtual threads");
+        return Executors.newVirtualThreadPerTaskExecutor();
     }
-}
\ No newline at end of file
+}
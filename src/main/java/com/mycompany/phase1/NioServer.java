@@ -0,0 +1,478 @@
+package com.mycompany.phase1;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Selector-based engine for the newline-delimited protocol (and BinaryCodec
+// frames once a connection has sent "HELLO BIN").
+// One acceptor thread hands channels round-robin to a few event loops;
+// each loop owns one direct read buffer shared by all of its connections.
+// Output is bounded per connection (OutputLimits): responses to one read are
+// coalesced into a single write, a connection with more than the high watermark
+// queued is not read from until it drains below the low watermark, and one that
+// stays throttled too long or passes maxQueued is closed.
+// Slow requests are not answered on a loop: LOGIN and REGISTER (PBKDF2, see
+// PasswordHasher) and the bookings and cancels that wait for the log to reach
+// the disk (PersistenceWriter) run on a virtual thread, and the connection is
+// not read from until the answer is back, so the order of responses is kept.
+// v2 requests always run on workers (CommandHandler).
+public class NioServer {
+    private static final int READ_BUFFER = 64 * 1024;
+    private static final int MAX_LINE = 8 * 1024;
+    private static final long ACCEPT_RETRY_MS = 50;
+    private static final ExecutorService OFFLOAD = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final int port;
+    private final ServerState state;
+    private final EventLoop[] loops;
+
+    public NioServer(int port, ServerState state, int loopCount) {
+        this.port = port;
+        this.state = state;
+        this.loops = new EventLoop[Math.max(1, loopCount)];
+    }
+
+    // blocks the calling thread accepting connections
+    public void start() throws IOException {
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(Selector.open());
+            Thread t = new Thread(loops[i], "nio-loop-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port), 1024);
+            System.out.println("Server running on port " + port
+                    + " (NIO, " + loops.length + " event loops)");
+            int next = 0;
+            while (true) {
+                SocketChannel ch;
+                try {
+                    ch = server.accept();
+                } catch (IOException e) {
+                    if (!server.isOpen()) throw e;
+                    // e.g. out of file descriptors or a connection reset while queued;
+                    // the pause keeps a lasting error from spinning the acceptor
+                    System.out.println("Failed to accept client: " + e.getMessage());
+                    try {
+                        Thread.sleep(ACCEPT_RETRY_MS);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    continue;
+                }
+                loops[next].add(ch);
+                next = (next + 1) % loops.length;
+            }
+        }
+    }
+
+    // per-connection state: a partial line carried between reads and pending output
+    private static final class Connection {
+        final CommandHandler handler;
+        final Queue<ByteBuffer> outQ = new ArrayDeque<>();
+        byte[] partial = new byte[0];
+        int partialLen;
+        BinaryProtocol protocol;  // set once the connection switched to binary frames
+        ByteBuffer frames;        // view of partial for the binary codec
+        int queued;               // bytes in outQ
+        boolean throttled;        // OP_READ off until queued drops to the low watermark
+        long throttledSince;
+        boolean waiting;          // a request runs off the loop; OP_READ off until it is answered
+        boolean paused;           // the handler's v2 backlog is full; OP_READ off until it drains
+
+        Connection(CommandHandler handler) {
+            this.handler = handler;
+        }
+    }
+
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();  // from other threads
+        private final ByteBuffer readBuf = ByteBuffer.allocateDirect(READ_BUFFER);
+        private final ByteBuffer batch = ByteBuffer.allocateDirect(READ_BUFFER);  // responses to one read
+        private final Set<SelectionKey> throttled = new HashSet<>();
+        private final byte[] lineBuf = new byte[MAX_LINE];
+        private Thread thread;
+
+        EventLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        void add(SocketChannel ch) {
+            pending.add(ch);
+            selector.wakeup();
+        }
+
+        // v2 responses finish on worker threads; hand them back to this loop
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            while (true) {
+                try {
+                    // throttled connections are checked for the slow timeout once a second
+                    selector.select(throttled.isEmpty() ? 0 : 1000);
+                    registerPending();
+                    runTasks();
+                    closeSlow();
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        try {
+                            if (key.isValid() && key.isReadable()) read(key);
+                            if (key.isValid() && key.isWritable()) write(key);
+                        } catch (Exception e) {
+                            System.out.println("Client disconnected: " + e.getMessage());
+                            close(key);
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // whatever one connection did, the loop keeps serving the others
+                    System.out.println("Event loop error: " + e);
+                }
+            }
+        }
+
+        private void registerPending() {
+            SocketChannel ch;
+            while ((ch = pending.poll()) != null) {
+                try {
+                    ch.configureBlocking(false);
+                    ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    Connection c = new Connection(new CommandHandler(state));
+                    SelectionKey key = ch.register(selector, SelectionKey.OP_READ, c);
+                    c.handler.setPush(line -> {
+                        if (!key.isValid()) return false;
+                        reply(key, c, line);
+                        return true;
+                    });
+                    c.handler.setResume(() -> execute(() -> unpause(key, c)));
+                } catch (IOException e) {
+                    try { ch.close(); } catch (IOException ignored) {}
+                }
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    System.out.println("Event loop error: " + e);
+                }
+            }
+        }
+
+        private void closeSlow() {
+            if (throttled.isEmpty()) return;
+            long now = System.currentTimeMillis();
+            for (SelectionKey key : new ArrayList<>(throttled)) {
+                Connection c = (Connection) key.attachment();
+                if (!key.isValid() || OutputLimits.tooSlow(c.throttledSince, now)) {
+                    if (key.isValid()) System.out.println("Slow consumer disconnected");
+                    close(key);
+                }
+            }
+        }
+
+        private void read(SelectionKey key) throws IOException {
+            SocketChannel ch = (SocketChannel) key.channel();
+            Connection c = (Connection) key.attachment();
+
+            readBuf.clear();
+            int n = ch.read(readBuf);
+            if (n < 0) {
+                close(key);
+                return;
+            }
+            readBuf.flip();
+            batch.clear();
+            try {
+                answer(key, c);
+            } finally {
+                flushBatch(key, c);
+            }
+        }
+
+        private void answer(SelectionKey key, Connection c) throws IOException {
+            int lineStart = 0;
+            int limit = readBuf.limit();
+            if (c.protocol != null) {
+                readFrames(key, c, 0, limit);
+                return;
+            }
+            for (int i = 0; i < limit; i++) {
+                if (readBuf.get(i) != '\n') continue;
+                int len = takeLine(c, lineStart, i);
+                lineStart = i + 1;
+                if (CommandHandler.slow(lineBuf, 0, len)) {
+                    String request = new String(lineBuf, 0, len, StandardCharsets.UTF_8);
+                    keepPartial(c, lineStart, limit, READ_BUFFER);  // answered after this one
+                    offload(key, c, () -> {
+                        String resp = c.handler.handle(request);
+                        return ByteBuffer.wrap((resp + "\n").getBytes(StandardCharsets.UTF_8));
+                    });
+                    return;
+                }
+                ResponseBuffer resp = c.handler.dispatch(lineBuf, 0, len, r -> reply(key, c, r));
+                if (resp != null) sendBuffer(key, c, resp.buffer());
+                if (c.handler.saturated()) {
+                    // v2 requests are waiting for workers; the rest waits for unpause
+                    keepPartial(c, lineStart, limit, READ_BUFFER);
+                    c.paused = true;
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                    return;
+                }
+                if (c.handler.binary()) {
+                    c.protocol = new BinaryProtocol(state, c.handler);
+                    readFrames(key, c, lineStart, limit);
+                    return;
+                }
+            }
+            keepPartial(c, lineStart, limit, MAX_LINE);
+        }
+
+        // Runs a slow request on a virtual thread. The connection is not read
+        // until its response is sent; then the requests that arrived behind it
+        // (kept in partial) are answered.
+        private void offload(SelectionKey key, Connection c, Callable<ByteBuffer> request) {
+            c.waiting = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            OFFLOAD.execute(() -> {
+                ByteBuffer resp;
+                try {
+                    resp = request.call();
+                } catch (Exception e) {
+                    execute(() -> {
+                        System.out.println("Client disconnected: " + e.getMessage());
+                        close(key);
+                    });
+                    return;
+                }
+                execute(() -> {
+                    c.waiting = false;
+                    resume(key, c, resp);
+                });
+            });
+        }
+
+        // a v2 worker took a request from the handler's full backlog
+        private void unpause(SelectionKey key, Connection c) {
+            if (!c.paused || c.waiting || c.handler.saturated()) return;
+            c.paused = false;
+            resume(key, c, null);
+        }
+
+        // sends resp (if any) and answers the requests kept in partial while
+        // the connection was not read
+        private void resume(SelectionKey key, Connection c, ByteBuffer resp) {
+            if (!key.isValid()) return;
+            try {
+                batch.clear();
+                try {
+                    if (resp != null) sendBuffer(key, c, resp);
+                    if (c.protocol != null) {
+                        readFrames(key, c, 0, 0);
+                    } else {
+                        readBuf.clear();
+                        readBuf.put(c.partial, 0, c.partialLen).flip();
+                        c.partialLen = 0;
+                        answer(key, c);
+                    }
+                } finally {
+                    flushBatch(key, c);
+                }
+                if (!c.waiting && !c.paused && !c.throttled && key.isValid()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                }
+            } catch (IOException | RuntimeException e) {
+                // a bad request kept in partial (a v1 error) drops only this connection
+                System.out.println("Client disconnected: " + e.getMessage());
+                close(key);
+            }
+        }
+
+        // Binary codec: appends readBuf[from, to) to the connection's bytes, answers
+        // every complete frame in order and keeps the incomplete tail.
+        private void readFrames(SelectionKey key, Connection c, int from, int to) throws IOException {
+            int len = c.partialLen + (to - from);
+            if (c.partial.length < len) {
+                byte[] grown = new byte[Math.max(len, c.partial.length * 2)];
+                System.arraycopy(c.partial, 0, grown, 0, c.partialLen);
+                c.partial = grown;
+                c.frames = null;
+            }
+            if (c.frames == null) c.frames = ByteBuffer.wrap(c.partial);
+            readBuf.get(from, c.partial, c.partialLen, to - from);
+
+            ByteBuffer in = c.frames;
+            in.limit(len).position(0);
+            int size;
+            while ((size = BinaryCodec.completeFrame(in)) >= 0) {
+                int end = in.position() + size;
+                in.limit(end);
+                if (BinaryProtocol.slow(in)) {
+                    // the protocol's buffers stay with this one request until it is answered
+                    ByteBuffer req = ByteBuffer.wrap(Arrays.copyOfRange(c.partial, in.position(), end));
+                    in.limit(len).position(end);
+                    offload(key, c, () -> c.protocol.handle(req));
+                    break;
+                }
+                sendBuffer(key, c, c.protocol.handle(in));
+                in.limit(len).position(end);
+            }
+            c.partialLen = len - in.position();
+            System.arraycopy(c.partial, in.position(), c.partial, 0, c.partialLen);
+        }
+
+        // Responses produced while answering one read go into batch and leave in
+        // one write at the end (flushBatch). The handlers reuse their buffers, so
+        // bytes are copied; once output is queued, later responses queue behind it.
+        private void sendBuffer(SelectionKey key, Connection c, ByteBuffer buf) throws IOException {
+            if (!c.outQ.isEmpty()) {
+                enqueue(key, c, buf);
+                return;
+            }
+            if (buf.remaining() > batch.remaining()) {
+                flushBatch(key, c);
+                if (!c.outQ.isEmpty() || buf.remaining() > batch.remaining()) {
+                    writeOrQueue(key, c, buf);
+                    return;
+                }
+            }
+            batch.put(buf);
+        }
+
+        private void flushBatch(SelectionKey key, Connection c) throws IOException {
+            batch.flip();
+            try {
+                if (batch.hasRemaining() && key.isValid()) writeOrQueue(key, c, batch);
+            } finally {
+                batch.clear();
+            }
+        }
+
+        private void writeOrQueue(SelectionKey key, Connection c, ByteBuffer buf) throws IOException {
+            if (c.outQ.isEmpty()) {
+                ((SocketChannel) key.channel()).write(buf);
+                if (!buf.hasRemaining()) return;
+            }
+            enqueue(key, c, buf);
+        }
+
+        // copies what is left of buf behind the queued output
+        private void enqueue(SelectionKey key, Connection c, ByteBuffer buf) throws IOException {
+            int n = buf.remaining();
+            if (c.queued + n > OutputLimits.MAX_QUEUED) throw new IOException("output limit exceeded");
+            ByteBuffer rest = ByteBuffer.allocate(n);
+            rest.put(buf).flip();
+            c.outQ.add(rest);
+            c.queued += n;
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            if (!c.throttled && c.queued > OutputLimits.HIGH_WATER) {
+                c.throttled = true;
+                c.throttledSince = System.currentTimeMillis();
+                throttled.add(key);
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+
+        // joins any carried-over bytes with readBuf[from, to) in lineBuf; returns the length
+        private int takeLine(Connection c, int from, int to) throws IOException {
+            int len = c.partialLen + (to - from);
+            if (len > MAX_LINE) throw new IOException("line too long");
+            System.arraycopy(c.partial, 0, lineBuf, 0, c.partialLen);
+            readBuf.get(from, lineBuf, c.partialLen, to - from);
+            c.partialLen = 0;
+            return len;
+        }
+
+        // max: MAX_LINE for an incomplete line, READ_BUFFER for requests waiting behind an offloaded one
+        private void keepPartial(Connection c, int from, int to, int max) throws IOException {
+            int extra = to - from;
+            if (extra == 0) return;
+            int len = c.partialLen + extra;
+            if (len > max) throw new IOException("line too long");
+            if (c.partial.length < len) {
+                byte[] grown = new byte[Math.min(max, Math.max(len, c.partial.length * 2))];
+                System.arraycopy(c.partial, 0, grown, 0, c.partialLen);
+                c.partial = grown;
+            }
+            readBuf.get(from, c.partial, c.partialLen, extra);
+            c.partialLen = len;
+        }
+
+        private void reply(SelectionKey key, Connection c, String resp) {
+            if (Thread.currentThread() != thread) {
+                execute(() -> reply(key, c, resp));
+                return;
+            }
+            if (!key.isValid()) return;  // closed while the request was running
+            try {
+                send(key, c, resp);
+            } catch (IOException e) {
+                System.out.println("Client disconnected: " + e.getMessage());
+                close(key);
+            }
+        }
+
+        private void send(SelectionKey key, Connection c, String resp) throws IOException {
+            writeOrQueue(key, c, ByteBuffer.wrap((resp + "\n").getBytes(StandardCharsets.UTF_8)));
+        }
+
+        private void write(SelectionKey key) throws IOException {
+            SocketChannel ch = (SocketChannel) key.channel();
+            Connection c = (Connection) key.attachment();
+            ByteBuffer buf;
+            while ((buf = c.outQ.peek()) != null) {
+                c.queued -= ch.write(buf);
+                if (buf.hasRemaining()) break;  // socket full, wait for next OP_WRITE
+                c.outQ.poll();
+            }
+            if (c.outQ.isEmpty()) key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            if (c.throttled && c.queued <= OutputLimits.LOW_WATER) {
+                c.throttled = false;
+                throttled.remove(key);
+                if (!c.waiting && !c.paused) key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+
+        private void close(SelectionKey key) {
+            if (key.attachment() != null && key.channel().isOpen()) {
+                ((Connection) key.attachment()).handler.close();
+            }
+            throttled.remove(key);
+            key.cancel();
+            try { key.channel().close(); } catch (IOException ignored) {}
+        }
+    }
+}
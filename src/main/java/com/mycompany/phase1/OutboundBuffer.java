@@ -0,0 +1,136 @@
+package com.mycompany.phase1;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+
+// Bounded output of one blocking-engine connection (see OutputLimits).
+// Responses are copied into a byte ring that grows up to maxQueued; one writer
+// thread drains it straight from the ring, so a burst of pipelined responses
+// goes out in a few large writes instead of one syscall per line. The reading
+// thread blocks in write() while the ring is above the high watermark, which
+// stops it reading more requests from a client that does not read its
+// responses; other threads use offer(), which never blocks.
+public class OutboundBuffer {
+    private final Socket socket;
+    private final OutputStream out;
+    private byte[] ring = new byte[2048];   // guarded by this
+    private int head, size;                 // guarded by this; size includes bytes being written
+    private boolean writing;                // guarded by this
+    private boolean closed;                 // guarded by this
+
+    private OutboundBuffer(Socket socket) throws IOException {
+        this.socket = socket;
+        this.out = socket.getOutputStream();
+    }
+
+    // the writer thread starts once the buffer is fully built
+    public static OutboundBuffer open(Socket socket) throws IOException {
+        OutboundBuffer b = new OutboundBuffer(socket);
+        Thread.ofVirtual().name("conn-writer").start(b::drain);
+        return b;
+    }
+
+    // reading thread: queue a response, first waiting for the client to catch up
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (size > OutputLimits.HIGH_WATER) {
+            long since = System.currentTimeMillis();
+            while (size > OutputLimits.LOW_WATER && !closed) {
+                long now = System.currentTimeMillis();
+                if (OutputLimits.tooSlow(since, now)) {
+                    close();
+                    throw new IOException("slow consumer");
+                }
+                try {
+                    wait(OutputLimits.POLICY == OutputLimits.SlowPolicy.DISCONNECT
+                            ? Math.max(1, OutputLimits.SLOW_TIMEOUT_MS - (now - since)) : 0);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted");
+                }
+            }
+        }
+        if (!put(b, off, len)) throw new IOException(closed ? "connection closed" : "output limit exceeded");
+    }
+
+    // any thread: queue without waiting; false if the connection is closed or
+    // over maxQueued (it is closed then)
+    public synchronized boolean offer(byte[] b) {
+        return put(b, 0, b.length);
+    }
+
+    // sends what is queued (waiting at most slowTimeoutMs), then closes
+    public synchronized void closeWhenDrained() {
+        long deadline = System.currentTimeMillis() + OutputLimits.SLOW_TIMEOUT_MS;
+        try {
+            while ((size > 0 || writing) && !closed) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) break;
+                wait(left);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        close();
+    }
+
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+        try { socket.close(); } catch (IOException ignored) {}  // unblocks a stuck write
+    }
+
+    private boolean put(byte[] b, int off, int len) {
+        if (closed) return false;
+        if (size + len > OutputLimits.MAX_QUEUED) {
+            close();
+            return false;
+        }
+        if (size + len > ring.length) grow(size + len);
+        int tail = (head + size) % ring.length;
+        int first = Math.min(len, ring.length - tail);
+        System.arraycopy(b, off, ring, tail, first);
+        System.arraycopy(b, off + first, ring, 0, len - first);
+        size += len;
+        notifyAll();
+        return true;
+    }
+
+    private void grow(int needed) {
+        byte[] bigger = new byte[Math.min(OutputLimits.MAX_QUEUED, Math.max(needed, ring.length * 2))];
+        int first = Math.min(size, ring.length - head);
+        System.arraycopy(ring, head, bigger, 0, first);
+        System.arraycopy(ring, 0, bigger, first, size - first);
+        ring = bigger;
+        head = 0;
+    }
+
+    // Writer thread: writes the contiguous run at head outside the lock. Producers
+    // only append after head + size, and grow() keeps the order, so the run is
+    // never overwritten while it is being written; it is released afterwards.
+    private void drain() {
+        try {
+            while (true) {
+                byte[] buf;
+                int from, n;
+                synchronized (this) {
+                    while (size == 0 && !closed) wait();
+                    if (closed) return;
+                    buf = ring;
+                    from = head;
+                    n = Math.min(size, ring.length - head);
+                    writing = true;
+                }
+                out.write(buf, from, n);
+                synchronized (this) {
+                    head = (head + n) % ring.length;
+                    size -= n;
+                    writing = false;
+                    notifyAll();  // a waiting reader may be below the low watermark now
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            close();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.mycompany.phase1;
+
+import java.util.Locale;
+
+// Per-connection output limits, shared by both engines:
+//   -Dconn.highWater=bytes    (256K) stop reading requests once this much output is queued
+//   -Dconn.lowWater=bytes     (64K)  read again once the queue has drained below this
+//   -Dconn.maxQueued=bytes    (4M)   hard cap; a connection that would pass it is closed
+//   -Dconn.slowPolicy=disconnect|wait
+//   -Dconn.slowTimeoutMs      (30000)
+// disconnect: a client whose queue stays above the high watermark for slowTimeoutMs
+//             is closed (default)
+// wait:       such a client is only throttled; maxQueued still applies
+// Output queued by other threads (v2 replies, SUBSCRIBE events) never blocks;
+// it counts against maxQueued like everything else.
+public final class OutputLimits {
+    public enum SlowPolicy { DISCONNECT, WAIT }
+
+    public static final int HIGH_WATER = Integer.getInteger("conn.highWater", 256 * 1024);
+    public static final int LOW_WATER = Math.min(HIGH_WATER, Integer.getInteger("conn.lowWater", 64 * 1024));
+    public static final int MAX_QUEUED = Math.max(HIGH_WATER, Integer.getInteger("conn.maxQueued", 4 * 1024 * 1024));
+    public static final SlowPolicy POLICY =
+            SlowPolicy.valueOf(System.getProperty("conn.slowPolicy", "disconnect").toUpperCase(Locale.ROOT));
+    public static final long SLOW_TIMEOUT_MS = Long.getLong("conn.slowTimeoutMs", 30_000);
+
+    private OutputLimits() {}
+
+    // true if a client that went above the high watermark at `since` should be closed
+    public static boolean tooSlow(long since, long now) {
+        return POLICY == SlowPolicy.DISCONNECT && now - since >= SLOW_TIMEOUT_MS;
+    }
+}
@@ -0,0 +1,152 @@
+package com.mycompany.phase1;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+// Password records in users.txt:
+//     pbkdf2$<iterations>$<salt>$<hash>     (PBKDF2WithHmacSHA256, base64, 16-byte salt)
+// Lines from before this format hold the password itself; they still verify and
+// ServerState rewrites them on the next successful LOGIN.
+//
+// PBKDF2 is slow on purpose, so it only runs on a small pool of its own
+// (-Dauth.threads, default half the cores; -Dauth.queue waiting jobs, default 256),
+// never on the booking path. With the queue full, hash/verify throw
+// RejectedExecutionException and the command answers ERR BUSY.
+// A successful check is remembered per user (-Dauth.cacheSize, LRU) as a SHA-256
+// of (per-process key, record, password): the same password again costs one
+// SHA-256. Wrong passwords are never cached and always pay the full hash.
+public class PasswordHasher {
+    private static final String PREFIX = "pbkdf2$";
+    private static final int ITERATIONS = Integer.getInteger("auth.iterations", 120_000);
+    private static final int THREADS = Integer.getInteger("auth.threads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int QUEUE = Integer.getInteger("auth.queue", 256);
+    private static final int CACHE_SIZE = Integer.getInteger("auth.cacheSize", 10_000);
+
+    private final SecureRandom random = new SecureRandom();
+    private final byte[] cacheKey = new byte[32];
+    private final ThreadPoolExecutor pool;
+
+    // username(lower) -> digest of the last verified (record, password); guarded by itself
+    private final Map<String, byte[]> verified = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    public PasswordHasher() {
+        random.nextBytes(cacheKey);
+        AtomicInteger n = new AtomicInteger();
+        pool = new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE), r -> {
+                    Thread t = new Thread(r, "auth-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    public static boolean isHashed(String record) {
+        return record.startsWith(PREFIX);
+    }
+
+    // a new record for password
+    public String hash(String password) {
+        byte[] salt = new byte[16];
+        random.nextBytes(salt);
+        byte[] h = run(() -> pbkdf2(password, salt, ITERATIONS));
+        Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + ITERATIONS + "$" + b64.encodeToString(salt) + "$" + b64.encodeToString(h);
+    }
+
+    public boolean verify(String key, String record, String password) {
+        byte[] digest = digest(record, password);
+        byte[] known;
+        synchronized (verified) {
+            known = verified.get(key);
+        }
+        if (known != null && MessageDigest.isEqual(known, digest)) return true;
+
+        boolean ok;
+        if (!isHashed(record)) {
+            ok = MessageDigest.isEqual(record.getBytes(StandardCharsets.UTF_8),
+                    password.getBytes(StandardCharsets.UTF_8));
+        } else {
+            String[] f = record.split("\\$");
+            int iterations;
+            byte[] salt, expected;
+            try {
+                iterations = Integer.parseInt(f[1]);
+                salt = Base64.getDecoder().decode(f[2]);
+                expected = Base64.getDecoder().decode(f[3]);
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                return false;  // damaged line in users.txt
+            }
+            ok = MessageDigest.isEqual(expected, run(() -> pbkdf2(password, salt, iterations)));
+        }
+        if (ok) {
+            synchronized (verified) {
+                verified.put(key, digest);
+            }
+        }
+        return ok;
+    }
+
+    // record was just made from password (a rehash), so it needs no check
+    public void remember(String key, String record, String password) {
+        byte[] digest = digest(record, password);
+        synchronized (verified) {
+            verified.put(key, digest);
+        }
+    }
+
+    // runs on the auth pool; the caller waits (a virtual thread or a v2 worker)
+    private byte[] run(Callable<byte[]> job) {
+        Future<byte[]> f = pool.submit(job);  // RejectedExecutionException when full
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            f.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("interrupted");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, 256);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private byte[] digest(String record, String password) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(cacheKey);
+            md.update(record.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            return md.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
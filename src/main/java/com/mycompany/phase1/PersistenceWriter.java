@@ -0,0 +1,188 @@
+package com.mycompany.phase1;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Single writer thread for every append-only file (users.txt, reservations.wal).
+// Callers enqueue a record and get a future that completes once the record is
+// durable according to the policy:
+//   ALWAYS  write + force() per record
+//   GROUP   collect records for up to maxDelay (or maxBatch), then one force() per file
+//   ASYNC   future completes at enqueue time; the writer still forces once per batch
+// Records for one file are written in the order they were enqueued.
+public class PersistenceWriter {
+    public enum Policy { ALWAYS, GROUP, ASYNC }
+
+    private final Policy policy;
+    private final long maxDelayNanos;
+    private final int maxBatch;
+    private final BlockingQueue<Op> queue = new LinkedBlockingQueue<>();
+    private final Map<Path, FileChannel> channels = new HashMap<>();  // writer thread only
+
+    private static final class Op {
+        final Path file;
+        final ByteBuffer data;  // null = force and close the file
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Op(Path file, ByteBuffer data) {
+            this.file = file;
+            this.data = data;
+        }
+    }
+
+    public PersistenceWriter(Policy policy, long maxDelayMillis, int maxBatch) {
+        this.policy = policy;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.maxBatch = Math.max(1, maxBatch);
+        Thread t = new Thread(this::run, "persistence-writer");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // -Dpersist.fsync=always|group|async, -Dpersist.groupDelayMs, -Dpersist.maxBatch
+    public static PersistenceWriter fromSystemProperties() {
+        Policy p = Policy.valueOf(System.getProperty("persist.fsync", "group").toUpperCase());
+        return new PersistenceWriter(p,
+                Long.getLong("persist.groupDelayMs", 2),
+                Integer.getInteger("persist.maxBatch", 512));
+    }
+
+    public CompletableFuture<Void> append(Path file, String record) {
+        Op op = new Op(file, ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8)));
+        queue.add(op);
+        return policy == Policy.ASYNC ? CompletableFuture.completedFuture(null) : op.done;
+    }
+
+    // completes after every earlier append to the file is forced and the file is closed
+    public CompletableFuture<Void> closeFile(Path file) {
+        Op op = new Op(file, null);
+        queue.add(op);
+        return op.done;
+    }
+
+    // Waits for durability. A failed write or force is reported and thrown as
+    // UncheckedIOException: the caller undoes its change and must not answer OK.
+    public static void await(CompletableFuture<Void> f) {
+        try {
+            f.join();
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            System.out.println("Error saving: " + cause.getMessage());
+            throw new UncheckedIOException(cause instanceof IOException io ? io : new IOException(cause));
+        }
+    }
+
+    private void run() {
+        List<Op> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+                if (policy == Policy.GROUP) {
+                    long deadline = System.nanoTime() + maxDelayNanos;
+                    while (batch.size() < maxBatch) {
+                        Op op = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (op == null) break;
+                        batch.add(op);
+                    }
+                } else {
+                    queue.drainTo(batch, maxBatch - 1);
+                }
+                process(batch);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(List<Op> batch) {
+        List<Op> waiting = new ArrayList<>();
+        Map<Path, FileChannel> dirty = new HashMap<>();
+        for (Op op : batch) {
+            FileChannel ch = null;
+            long start = -1;
+            try {
+                if (op.data == null) {
+                    FileChannel closing = channels.remove(op.file);
+                    if (closing != null) {
+                        closing.force(false);
+                        closing.close();
+                    }
+                    dirty.remove(op.file);
+                    complete(waiting, op.file, null);
+                    op.done.complete(null);
+                    continue;
+                }
+                ch = channel(op.file);
+                start = ch.position();
+                while (op.data.hasRemaining()) ch.write(op.data);
+                if (policy == Policy.ALWAYS) {
+                    ch.force(false);
+                    op.done.complete(null);
+                } else {
+                    dirty.put(op.file, ch);
+                    waiting.add(op);
+                }
+            } catch (IOException e) {
+                if (start >= 0) cutBack(ch, start);
+                op.done.completeExceptionally(e);
+            }
+        }
+
+        // one force per touched file for the whole batch
+        for (Map.Entry<Path, FileChannel> e : dirty.entrySet()) {
+            IOException err = null;
+            try {
+                e.getValue().force(false);
+            } catch (IOException ex) {
+                err = ex;
+            }
+            complete(waiting, e.getKey(), err);
+        }
+    }
+
+    private static void complete(List<Op> waiting, Path file, IOException err) {
+        waiting.removeIf(op -> {
+            if (!op.file.equals(file)) return false;
+            if (err == null) op.done.complete(null);
+            else op.done.completeExceptionally(err);
+            return true;
+        });
+    }
+
+    // drops the part of a failed record that was written, so the next record
+    // does not start in the middle of a line
+    private static void cutBack(FileChannel ch, long size) {
+        try {
+            ch.truncate(size);
+        } catch (IOException e) {
+            System.out.println("Error truncating after a failed write: " + e.getMessage());
+        }
+    }
+
+    private FileChannel channel(Path file) throws IOException {
+        FileChannel ch = channels.get(file);
+        if (ch == null) {
+            ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            channels.put(file, ch);
+        }
+        return ch;
+    }
+}
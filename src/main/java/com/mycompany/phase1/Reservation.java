@@ -1,36 +1,32 @@
 
 package com.mycompany.phase1;
 
-import java.io.FileWriter;
-import java.io.IOException;
+import java.time.LocalDate;
 
 public class Reservation {
     private String id;
     private String username;
     private Room room;
-    private int day;
+    private LocalDate date;
     private int nights;
 
-    public Reservation(String id, String username, Room room, int day, int nights) {
+    public Reservation(String id, String username, Room room, LocalDate date, int nights) {
         this.id = id;
         this.username = username;
         this.room = room;
-        this.day = day;
+        this.date = date;
         this.nights = nights;
     }
 
     public String getId() { return id; }
     public String getUsername() { return username; }
     public Room getRoom() { return room; }
-    public int getDay() { return day; }
+    public LocalDate getDate() { return date; }
     public int getNights() { return nights; }
 
-    public void saveToFile() {
-        try (FileWriter fw = new FileWriter("reservations.txt", true)) {
-            fw.write(id + "," + username + "," + room.getType() + "," + room.getNumber() + "," + day + "," + nights + "\n");
-        } catch (IOException e) {
-            System.out.println("Error saving reservation: " + e.getMessage());
-        }
+    // id,username,type,number,date,nights (one line of reservations.txt)
+    public String toRecord() {
+        return id + "," + username + "," + room.getType() + "," + room.getNumber() + "," + date + "," + nights;
     }
 }
 
@@ -8,6 +8,8 @@ import java.awt.geom.*;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
@@ -26,6 +28,8 @@ private String selectedType = "STANDARD";
 private int selectedStartDay = 1;
 private int selectedNights = 1;
 private String selectedRoomId = null;
+private String heldRoomId = null;   // room selected in RESULTS and held for us
+private String holdId = null;
 private List<String> lastAvailableRooms = new ArrayList<>();
 
 // ---- UI infra ----
@@ -771,6 +775,30 @@ private void buildResults() {
         }
     });
 
+    // hold the selected room, so it cannot go to someone else before Reserve
+    listRooms.addListSelectionListener(e -> {
+        if (e.getValueIsAdjusting()) return;
+        String sel = listRooms.getSelectedValue();
+        if (sel == null || sel.equals(heldRoomId) || !serverConnected) return;
+        releaseHeldRoom();
+        try {
+            String resp = client.holdRoom(currentUser, selectedType, sel.replace(" ", "_"),
+                    selectedStartDay, selectedNights);
+            if (resp.startsWith("OK HELD")) {
+                holdId = resp.split(" ")[2];
+                heldRoomId = sel;
+            } else if (resp.startsWith("ERR NO_AVAIL")) {
+                JOptionPane.showMessageDialog(this, sel + " was just booked by someone else.");
+                lastAvailableRooms = findAvailableRooms(selectedType, selectedStartDay, selectedNights);
+                if (lastAvailableRooms.isEmpty()) showCard("NO_AVAIL");
+                else SwingUtilities.invokeLater(this::refreshResultsList);
+            }
+            // other errors (hold limit, older server): Reserve falls back to BOOK2
+        } catch (Exception ex) {
+            // same: no hold, Reserve books directly
+        }
+    });
+
     JScrollPane sp = new JScrollPane(listRooms);
     sp.setPreferredSize(new Dimension(600, 320));
     sp.setBorder(new LineBorder(SAND, 2, true));
@@ -799,9 +827,17 @@ private void buildResults() {
     String safeRoomId = selectedRoomId.replace(" ", "_");
 
     try {
-        String resp = client.bookRoom(
-                currentUser, selectedType, safeRoomId,
-                selectedStartDay, selectedNights);
+        String resp = null;
+        if (holdId != null && selectedRoomId.equals(heldRoomId)) {
+            resp = client.confirmHold(currentUser, holdId);
+            holdId = null;
+            heldRoomId = null;
+        }
+        if (resp == null || resp.startsWith("ERR NO_SUCH_HOLD")) {  // none, or it expired
+            resp = client.bookRoom(
+                    currentUser, selectedType, safeRoomId,
+                    selectedStartDay, selectedNights);
+        }
 
         if (resp.startsWith("OK CONFIRMED")) {
             JOptionPane.showMessageDialog(this,
@@ -820,7 +856,10 @@ private void buildResults() {
 });
 
 
-    back.addActionListener(e -> showCard("DURATION"));
+    back.addActionListener(e -> {
+        releaseHeldRoom();
+        showCard("DURATION");
+    });
     root.add(wrapCard(p), "RESULTS");
 }
 
@@ -1048,6 +1087,19 @@ private void showCard(String name) {
     cards.show(root, name);
 }
 
+// gives back the room held from the RESULTS list, if any
+private void releaseHeldRoom() {
+    if (holdId == null) return;
+    String id = holdId;
+    holdId = null;
+    heldRoomId = null;
+    try {
+        client.releaseHold(currentUser, id);
+    } catch (Exception ex) {
+        // it expires on the server anyway
+    }
+}
+
 private void refreshResultsList() {
     roomsModel.clear();
     for (String r : lastAvailableRooms)
@@ -1122,7 +1174,7 @@ private void refreshMyBookingsView() {
 
                 String display = info;
                 String roomId = info;
-                int day = -1, nights = -1;
+                int nights = -1;
                 int atPos = info.indexOf('@');
                 if (atPos >= 0) {
                     roomId = info.substring(0, atPos);
@@ -1130,11 +1182,12 @@ private void refreshMyBookingsView() {
                     int xPos = rest.indexOf('x');
                     if (xPos >= 0) {
                         try {
-                            day = Integer.parseInt(rest.substring(0, xPos));
+                            // server sends the check-in date as yyyy-MM-dd
+                            LocalDate date = LocalDate.parse(rest.substring(0, xPos));
                             nights = Integer.parseInt(rest.substring(xPos + 1));
-                            String dayName = WEEK_DAYS[day - 1];
-                            display = roomId + " (" + dayName + ", " + nights + " nights)";
-                        } catch (NumberFormatException ignored) {
+                            String dayName = WEEK_DAYS[date.getDayOfWeek().getValue() % 7];
+                            display = roomId + " (" + dayName + " " + date + ", " + nights + " nights)";
+                        } catch (NumberFormatException | DateTimeParseException ignored) {
                             display = info;
                         }
                     } else {
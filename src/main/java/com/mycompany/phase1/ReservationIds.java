@@ -0,0 +1,80 @@
+package com.mycompany.phase1;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Reservation ids: one long
+//     41 bits  milliseconds since 2024-01-01 (until 2093)
+//     10 bits  node (-Dnode.id, 0..1023), for servers sharing one id space
+//     12 bits  sequence within the millisecond
+// written as "R" + 11 base-62 digits. The digits are fixed width and in ASCII
+// order, so ids sort as strings in the order they were issued.
+// next() is one CAS: a clock that stands still or goes back keeps counting up
+// from the last id, and more than 4096 ids in a millisecond borrow the next one.
+// At startup ServerState passes every loaded id to observe(), so a restart with
+// a clock behind the old run's still issues larger ids.
+public class ReservationIds {
+    private static final long EPOCH_MS = 1_704_067_200_000L;  // 2024-01-01T00:00Z
+    private static final int NODE_BITS = 10, SEQ_BITS = 12;
+    private static final long SEQ_MASK = (1L << SEQ_BITS) - 1;
+    private static final int WIDTH = 11;
+    private static final char[] DIGITS =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
+
+    private final long node;
+    private final AtomicLong last = new AtomicLong();  // time << SEQ_BITS | sequence
+
+    public ReservationIds(int node) {
+        if (node < 0 || node >= 1 << NODE_BITS) throw new IllegalArgumentException("node id out of range: " + node);
+        this.node = node;
+    }
+
+    public static ReservationIds fromSystemProperties() {
+        return new ReservationIds(Integer.getInteger("node.id", 0));
+    }
+
+    public String next() {
+        long now = (System.currentTimeMillis() - EPOCH_MS) << SEQ_BITS;
+        long prev, next;
+        do {
+            prev = last.get();
+            next = Math.max(prev + 1, now);
+        } while (!last.compareAndSet(prev, next));
+        return format((next >>> SEQ_BITS) << (NODE_BITS + SEQ_BITS) | node << SEQ_BITS | (next & SEQ_MASK));
+    }
+
+    // an id read back from disk; ids in another format, or from more than a day
+    // ahead (an old "R<nanos>" id that happens to parse), are ignored
+    public void observe(String id) {
+        long v = parse(id);
+        if (v < 0) return;
+        long time = v >>> (NODE_BITS + SEQ_BITS);
+        if (time > System.currentTimeMillis() - EPOCH_MS + 86_400_000L) return;
+        long state = time << SEQ_BITS | (v & SEQ_MASK);
+        last.accumulateAndGet(state, Math::max);
+    }
+
+    public static String format(long v) {
+        char[] c = new char[1 + WIDTH];
+        c[0] = 'R';
+        for (int i = WIDTH; i >= 1; i--) {
+            c[i] = DIGITS[(int) Long.remainderUnsigned(v, 62)];
+            v = Long.divideUnsigned(v, 62);
+        }
+        return new String(c);
+    }
+
+    // the long behind an id from format(), -1 for anything else (older "R<nanos>" ids)
+    public static long parse(String id) {
+        if (id.length() != 1 + WIDTH || id.charAt(0) != 'R') return -1;
+        long v = 0;
+        for (int i = 1; i <= WIDTH; i++) {
+            char ch = id.charAt(i);
+            int d = ch >= '0' && ch <= '9' ? ch - '0'
+                    : ch >= 'A' && ch <= 'Z' ? ch - 'A' + 10
+                    : ch >= 'a' && ch <= 'z' ? ch - 'a' + 36 : -1;
+            if (d < 0 || v > (Long.MAX_VALUE - d) / 62) return -1;
+            v = v * 62 + d;
+        }
+        return v;
+    }
+}
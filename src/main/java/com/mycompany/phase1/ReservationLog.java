@@ -0,0 +1,171 @@
+package com.mycompany.phase1;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+// Reservation persistence: a binary snapshot (reservations.snap, see SnapshotFile)
+// plus an append-only text write-ahead log of changes since that snapshot:
+//     B,id,username,type,number,date,nights     booking
+//     C,id                                      cancellation
+//     M,n,<n x id,username,type,number,date,nights>   group booked all-or-nothing
+// Appends are handed to the PersistenceWriter, which keeps the log open and
+// batches fsyncs; callers wait on the returned future. Compaction rotates the
+// log to <wal>.old, writes a fresh snapshot, then deletes <wal>.old. On startup
+// only the logs are parsed as text; records present in both the snapshot and a
+// log (a crash mid-compaction) are resolved by reservation id.
+// A legacy text snapshot (reservations.txt) is read only while no .snap exists.
+public class ReservationLog {
+    public interface Sink {
+        void add(String id, String user, String type, int number, long epochDay, int nights);
+    }
+
+    private final File snapshot;
+    private final File legacySnapshot;
+    private final File wal;
+    private final File walOld;
+    private final PersistenceWriter writer;
+    private final Function<String, LocalDate> dateParser;
+    private int records;  // appended since the last rotation
+
+    public ReservationLog(File snapshot, File legacySnapshot, File wal,
+                          PersistenceWriter writer, Function<String, LocalDate> dateParser) {
+        this.snapshot = snapshot;
+        this.legacySnapshot = legacySnapshot;
+        this.wal = wal;
+        this.writer = writer;
+        this.dateParser = dateParser;
+        this.walOld = new File(wal.getPath() + ".old");
+    }
+
+    // Feeds every live reservation to sink: snapshot records first, then the log
+    // tail. An unreadable snapshot or log is thrown, not skipped: the caller must
+    // not run (and compact) with only part of the reservations.
+    public void load(Sink sink) throws IOException {
+        // the tail is small: collect it first so snapshot records it cancels
+        // or repeats can be skipped while streaming the snapshot
+        Map<String, String[]> tail = new LinkedHashMap<>();
+        Set<String> canceled = new HashSet<>();
+        replay(walOld, tail, canceled);
+        replay(wal, tail, canceled);
+
+        Sink fromSnapshot = (id, user, type, number, epochDay, nights) -> {
+            if (!canceled.contains(id) && !tail.containsKey(id)) {
+                sink.add(id, user, type, number, epochDay, nights);
+            }
+        };
+        if (snapshot.exists()) {
+            SnapshotFile.read(snapshot.toPath(), fromSnapshot);
+        } else if (legacySnapshot.exists()) {
+            try (BufferedReader br = new BufferedReader(new FileReader(legacySnapshot))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    String[] p = line.split(",", 6);
+                    if (p.length == 6) emit(p, fromSnapshot);
+                    records++;  // so the next compaction converts it to binary
+                }
+            }
+        }
+        for (String[] p : tail.values()) emit(p, sink);
+    }
+
+    // id,username,type,number,date,nights (old files carry a weekday 1..7 instead of a date)
+    private void emit(String[] p, Sink sink) {
+        try {
+            LocalDate date = dateParser.apply(p[4]);
+            if (date == null) return;
+            sink.add(p[0], p[1], p[2], Integer.parseInt(p[3]), date.toEpochDay(),
+                    Integer.parseInt(p[5]));
+        } catch (NumberFormatException ignored) {}
+    }
+
+    private void replay(File f, Map<String, String[]> tail, Set<String> canceled) throws IOException {
+        if (!f.exists()) return;
+        try (BufferedReader br = new BufferedReader(new FileReader(f))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.startsWith("B,")) {
+                    String[] p = line.substring(2).split(",", 6);
+                    if (p.length == 6) tail.put(p[0], p);  // a torn last line is skipped
+                } else if (line.startsWith("M,")) {
+                    String[] p = line.substring(2).split(",");
+                    int n = groupSize(p);
+                    for (int i = 0; i < n; i++) {  // a torn group is skipped as a whole
+                        String[] r = Arrays.copyOfRange(p, 1 + 6 * i, 7 + 6 * i);
+                        tail.put(r[0], r);
+                    }
+                } else if (line.startsWith("C,")) {
+                    String id = line.substring(2);
+                    tail.remove(id);
+                    canceled.add(id);
+                }
+                records++;
+            }
+        }
+    }
+
+    // number of reservations in a complete M record, 0 if the line is damaged
+    private static int groupSize(String[] p) {
+        try {
+            int n = Integer.parseInt(p[0]);
+            return n > 0 && p.length == 1 + 6 * n ? n : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // callers serialize appends (ServerState's fileLock) so the log order matches memory
+    public synchronized CompletableFuture<Void> appendBook(Reservation r) {
+        records++;
+        return writer.append(wal.toPath(), "B," + r.toRecord() + "\n");
+    }
+
+    // one record for the whole group, so a crash keeps all of it or none
+    public synchronized CompletableFuture<Void> appendGroup(List<Reservation> group) {
+        records++;
+        StringBuilder sb = new StringBuilder("M,").append(group.size());
+        for (Reservation r : group) sb.append(',').append(r.toRecord());
+        return writer.append(wal.toPath(), sb.append('\n').toString());
+    }
+
+    public synchronized CompletableFuture<Void> appendCancel(String resId) {
+        records++;
+        return writer.append(wal.toPath(), "C," + resId + "\n");
+    }
+
+    public synchronized int pendingRecords() {
+        return records;
+    }
+
+    // Everything logged so far moves to <wal>.old and new appends start a fresh log.
+    // The snapshot written afterwards may include or miss changes made after the
+    // rotation: those are all in the new log, and replay by id settles them.
+    public synchronized void rotate() throws IOException {
+        writer.closeFile(wal.toPath()).join();
+        if (walOld.exists()) return;  // previous snapshot never finished; keep both logs
+        if (wal.exists()) Files.move(wal.toPath(), walOld.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        records = 0;
+    }
+
+    // writes the store's live reservations, then drops the rotated log
+    public void writeSnapshot(ReservationStore store) throws IOException {
+        File tmp = new File(snapshot.getPath() + ".tmp");
+        SnapshotFile.write(tmp.toPath(), store);
+        Files.move(tmp.toPath(), snapshot.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(walOld.toPath());
+        Files.deleteIfExists(legacySnapshot.toPath());
+    }
+}
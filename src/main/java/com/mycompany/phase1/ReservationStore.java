@@ -0,0 +1,35 @@
+package com.mycompany.phase1;
+
+import java.io.File;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Where live reservations are kept. Implementations are thread-safe; ServerState
+// still orders store updates against the reservation log under its fileLock.
+//   heap    HeapReservationStore   (default) plain objects per user
+//   mapped  MappedReservationStore fixed-size records in a memory-mapped file
+public interface ReservationStore {
+
+    void add(Reservation r);
+
+    // the live reservation with this id, or null
+    Reservation get(String resId);
+
+    // the user's reservations in booking order (a copy)
+    List<Reservation> forUser(String username);
+
+    // removes and returns the reservation if it exists and belongs to username
+    Reservation remove(String username, String resId);
+
+    // visits every live reservation; may run concurrently with updates
+    void forEach(Consumer<Reservation> action);
+
+    static ReservationStore fromSystemProperties(Inventory inventory) {
+        String kind = System.getProperty("store", "heap");
+        if (kind.equalsIgnoreCase("mapped")) {
+            return new MappedReservationStore(new File("reservations.dat"),
+                    new File("reservations.idx"), inventory);
+        }
+        return new HeapReservationStore();
+    }
+}
@@ -0,0 +1,116 @@
+package com.mycompany.phase1;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+// Growable byte buffer a response line is written into, reused for every line of
+// a connection. Numbers and dates are formatted digit by digit and room names
+// are copied from pre-encoded bytes, so writing a response allocates nothing
+// once the buffer has grown to fit.
+public final class ResponseBuffer {
+    private byte[] bytes = new byte[512];
+    private int size;
+    private ByteBuffer view = ByteBuffer.wrap(bytes);
+
+    public ResponseBuffer clear() {
+        size = 0;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // the content as a buffer positioned at 0; valid until the next append
+    public ByteBuffer buffer() {
+        view.limit(size).position(0);
+        return view;
+    }
+
+    public byte[] array() {
+        return bytes;
+    }
+
+    private void ensure(int n) {
+        if (size + n <= bytes.length) return;
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + n));
+        view = ByteBuffer.wrap(bytes);
+    }
+
+    public ResponseBuffer append(byte b) {
+        ensure(1);
+        bytes[size++] = b;
+        return this;
+    }
+
+    public ResponseBuffer append(byte[] b) {
+        ensure(b.length);
+        System.arraycopy(b, 0, bytes, size, b.length);
+        size += b.length;
+        return this;
+    }
+
+    // protocol words are ASCII; anything else goes through the encoder
+    public ResponseBuffer append(String s) {
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            if (s.charAt(i) >= 0x80) return append(s.getBytes(StandardCharsets.UTF_8));
+        }
+        ensure(n);
+        for (int i = 0; i < n; i++) bytes[size++] = (byte) s.charAt(i);
+        return this;
+    }
+
+    public ResponseBuffer append(long v) {
+        if (v < 0) {
+            append((byte) '-');
+            if (v == Long.MIN_VALUE) return append("9223372036854775808");
+            v = -v;
+        }
+        int digits = 1;
+        for (long x = v; x >= 10; x /= 10) digits++;
+        ensure(digits);
+        for (int p = size + digits - 1; p >= size; p--) {
+            bytes[p] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        size += digits;
+        return this;
+    }
+
+    // yyyy-MM-dd of an epoch day (LocalDate.toString for years 0..9999)
+    public ResponseBuffer appendDate(long epochDay) {
+        // civil-from-days (H. Hinnant), proleptic Gregorian like LocalDate
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        long d = doy - (153 * mp + 2) / 5 + 1;
+        long m = mp < 10 ? mp + 3 : mp - 9;
+        long y = yoe + era * 400 + (m <= 2 ? 1 : 0);
+        if (y < 0 || y > 9999) return append(LocalDate.ofEpochDay(epochDay).toString());
+
+        ensure(10);
+        pad(y, 4).append((byte) '-');
+        pad(m, 2).append((byte) '-');
+        return pad(d, 2);
+    }
+
+    private ResponseBuffer pad(long v, int width) {
+        for (int p = size + width - 1; p >= size; p--) {
+            bytes[p] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        size += width;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, 0, size, StandardCharsets.UTF_8);
+    }
+}
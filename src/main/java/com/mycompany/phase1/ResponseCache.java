@@ -0,0 +1,96 @@
+package com.mycompany.phase1;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded cache of response bodies (what follows "OK ROOMS " or "OK RES ").
+// An entry records the version of the data it was built from; callers read the
+// version before building, writers bump it after changing the data, so an entry
+// that raced with a change never matches again. Nothing is ever invalidated by
+// hand.
+// Set-associative: a key maps to one set of WAYS entries with its own lock and
+// the least recently used entry of the set is replaced. A hit takes one
+// uncontended lock and allocates nothing.
+public class ResponseCache {
+    private static final int WAYS = 4;
+
+    private final Object[] locks;     // one per set
+    private final Entry[] entries;    // set * WAYS + way; guarded by the set's lock
+    private final long[] used;        // last use of each entry, from the set's clock
+    private final long[] clocks;      // per set
+    private final int setMask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private static final class Entry {
+        final long key;
+        final Object id;     // full key when key is only a hash (MY_RES: the user)
+        final long version;
+        final byte[] body;
+
+        Entry(long key, Object id, long version, byte[] body) {
+            this.key = key;
+            this.id = id;
+            this.version = version;
+            this.body = body;
+        }
+    }
+
+    public ResponseCache(int capacity) {
+        int sets = Integer.highestOneBit(Math.max(1, capacity / WAYS));
+        setMask = sets - 1;
+        locks = new Object[sets];
+        for (int i = 0; i < sets; i++) locks[i] = new Object();
+        entries = new Entry[sets * WAYS];
+        used = new long[sets * WAYS];
+        clocks = new long[sets];
+    }
+
+    // the body stored for (key, id) at exactly this version, or null
+    public byte[] get(long key, Object id, long version) {
+        int set = set(key);
+        synchronized (locks[set]) {
+            for (int i = set * WAYS; i < (set + 1) * WAYS; i++) {
+                Entry e = entries[i];
+                if (e != null && e.key == key && e.version == version && Objects.equals(e.id, id)) {
+                    used[i] = ++clocks[set];
+                    hits.increment();
+                    return e.body;
+                }
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(long key, Object id, long version, byte[] body) {
+        Entry added = new Entry(key, id, version, body);
+        int set = set(key);
+        synchronized (locks[set]) {
+            int victim = set * WAYS;
+            for (int i = set * WAYS; i < (set + 1) * WAYS; i++) {
+                Entry e = entries[i];
+                if (e == null || (e.key == key && Objects.equals(e.id, id))) {
+                    victim = i;
+                    break;
+                }
+                if (used[i] < used[victim]) victim = i;
+            }
+            entries[victim] = added;
+            used[victim] = ++clocks[set];
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    private int set(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & setMask;
+    }
+}
@@ -1,35 +1,81 @@
 package com.mycompany.phase1;
 
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 public class ServerState {
 
-    private final List<User> users = new ArrayList<>();
-    private final Map<String, String> creds = new HashMap<>();           // username -> password
-    private final Map<String, List<Reservation>> byUser = new HashMap<>(); // username(lower) -> reservations
+    // username(lower, Locale.ROOT) -> user; the only copy in memory
+    private final Map<String, User> users = new ConcurrentHashMap<>();
 
-    // [category][roomIndex][dayIndex]
-    private final boolean[][][] availability = new boolean[3][5][7];
+    // PBKDF2 on its own bounded pool, plus a cache of verified passwords
+    private final PasswordHasher hasher = new PasswordHasher();
 
-    private static final String[] CATS = {"STANDARD","PREMIUM","SUITE"};
-    private static final String[][] ROOM_IDS = {
-            {"Wadi Room 1","Wadi Room 2","Wadi Room 3","Wadi Room 4","Wadi Room 5"},
-            {"Oasis Room 1","Oasis Room 2","Oasis Room 3","Oasis Room 4","Oasis Room 5"},
-            {"Mountain Suite 1","Mountain Suite 2","Mountain Suite 3","Mountain Suite 4","Mountain Suite 5"}
-    };
+    // Locking: users need no lock (putIfAbsent/replace on the map). fileLock keeps
+    // store updates and reservation log appends in the same order. Room calendars
+    // (Inventory) need no lock.
+    private final Object fileLock = new Object();
+
+    // rooms.txt (optional) + dated calendars; -Dinventory.horizon=days
+    private final Inventory inventory = Inventory.load(new File("rooms.txt"),
+            Integer.getInteger("inventory.horizon", Inventory.DEFAULT_HORIZON));
+
+    // live reservations; -Dstore=heap|mapped
+    private final ReservationStore store = ReservationStore.fromSystemProperties(inventory);
+
+    // SUBSCRIBE: availability changes pushed to connected clients
+    private final AvailabilityFeed feed = new AvailabilityFeed(inventory);
+
+    // LIST_AVAIL bodies by (category, start, nights) and MY_RES bodies by user;
+    // -Dcache.listAvail / -Dcache.myRes entries
+    private final ResponseCache listCache = new ResponseCache(Integer.getInteger("cache.listAvail", 4096));
+    private final ResponseCache resCache = new ResponseCache(Integer.getInteger("cache.myRes", 4096));
+    private final AtomicLongArray userVersions = new AtomicLongArray(1024);  // MY_RES, striped by user
+
+    // sortable reservation ids, unique across threads and restarts
+    private final ReservationIds reservationIds = ReservationIds.fromSystemProperties();
+
+    // LOGIN tokens; commands that carry one skip the user table
+    private final SessionTable sessions = new SessionTable();
+
+    // HOLD / CONFIRM / RELEASE; expired holds give their nights back
+    private final HoldTable holds = HoldTable.start(this::freeHeld);
+
+    // reservations.snap is the compacted binary snapshot, reservations.wal the changes since
+    // one writer thread batches appends and fsyncs for both files (-Dpersist.fsync=...)
+    private final PersistenceWriter writer = PersistenceWriter.fromSystemProperties();
+    // users.txt has its own writer, so REGISTER fsyncs do not wait behind WAL batches
+    private final PersistenceWriter userWriter = PersistenceWriter.fromSystemProperties();
+    private final ReservationLog log = new ReservationLog(
+            new File("reservations.snap"), new File("reservations.txt"),
+            new File("reservations.wal"), writer, inventory::parseStart);
+    private static final Path USERS_FILE = Paths.get("users.txt");
+    private static final int COMPACT_AFTER = Integer.getInteger("wal.compactAfter", 10_000);
 
     public ServerState() {
         // كل الغرف متاحة بالبداية
-        for (int c = 0; c < 3; c++)
-            for (int r = 0; r < 5; r++)
-                Arrays.fill(availability[c][r], true);
-
         loadUsersFromFile();
         loadReservationsFromFile();
+
+        ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "wal-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        compactor.scheduleWithFixedDelay(this::compactLog, 30, 30, TimeUnit.SECONDS);
     }
 
     // ---------- users ----------
+    // a later line for the same user (a rehashed password) replaces the earlier one
     private void loadUsersFromFile() {
         File f = new File("users.txt");
         if (!f.exists()) return;
@@ -37,200 +83,377 @@ public class ServerState {
             String line;
             while ((line = br.readLine()) != null) {
                 String[] parts = line.split(",", 2);
-                if (parts.length == 2) {
-                    users.add(new User(parts[0], parts[1]));
-                    creds.put(parts[0].toLowerCase(), parts[1]);
-                }
+                if (parts.length == 2) users.put(userKey(parts[0]), new User(parts[0], parts[1]));
             }
         } catch (IOException ignored) {}
     }
 
-    public synchronized boolean userExists(String username) {
-        return creds.containsKey(username.toLowerCase());
+    private static String userKey(String username) {
+        return username.toLowerCase(Locale.ROOT);
     }
 
-    public synchronized boolean register(String username, String password) {
-        String key = username.toLowerCase();
-        if (creds.containsKey(key)) return false;
-        creds.put(key, password);
-        users.add(new User(username, password));
-        try (FileWriter fw = new FileWriter("users.txt", true)) {
-            fw.write(username + "," + password + "\n");
-        } catch (IOException ignored) {}
+    public boolean userExists(String username) {
+        return users.containsKey(userKey(username));
+    }
+
+    // hashing runs on the auth pool; both throw RejectedExecutionException while
+    // that pool is saturated. register throws UncheckedIOException, with the user
+    // taken out again, if users.txt could not be written.
+    public boolean register(String username, String password) {
+        String key = userKey(username);
+        if (users.containsKey(key)) return false;
+        User user = new User(username, hasher.hash(password));
+        if (users.putIfAbsent(key, user) != null) return false;
+        try {
+            PersistenceWriter.await(userWriter.append(USERS_FILE, username + "," + user.getPassword() + "\n"));
+        } catch (UncheckedIOException e) {
+            users.remove(key, user);
+            throw e;
+        }
+        return true;
+    }
+
+    public boolean login(String username, String password) {
+        String key = userKey(username);
+        User user = users.get(key);
+        if (user == null || !hasher.verify(key, user.getPassword(), password)) return false;
+        if (!PasswordHasher.isHashed(user.getPassword())) rehash(key, user, password);
         return true;
     }
 
-    public synchronized boolean login(String username, String password) {
-        String key = username.toLowerCase();
-        return creds.containsKey(key) && Objects.equals(creds.get(key), password);
+    // a plain-text line from before hashing: append the hashed record, which
+    // wins over the old line on the next load
+    private void rehash(String key, User old, String password) {
+        User user = new User(old.getUsername(), hasher.hash(password));
+        if (!users.replace(key, old, user)) return;
+        userWriter.append(USERS_FILE, user.getUsername() + "," + user.getPassword() + "\n");
+        hasher.remember(key, user.getPassword(), password);
     }
 
     // ---------- helpers ----------
+    // unknown categories fall back to the first one, as before
     private int catIndex(String cat) {
-        String x = cat.toUpperCase();
-        if (x.equals("STANDARD")) return 0;
-        if (x.equals("PREMIUM"))  return 1;
-        if (x.equals("SUITE"))    return 2;
-        return 0;
+        return Math.max(0, inventory.catIndex(cat));
     }
 
-    private int roomIndexFromId(int cat, String roomId) {
-        for (int i = 0; i < 5; i++) {
-            if (ROOM_IDS[cat][i].equalsIgnoreCase(roomId)) return i;
-        }
-        return -1;
+    // START token of LIST_AVAIL/BOOK2: weekday 1..7 or yyyy-MM-dd; null if invalid
+    public LocalDate parseStart(String token) {
+        return inventory.parseStart(token);
+    }
+
+    // START field of the binary codec: weekday 1..7 or an epoch day
+    public long startDay(long field) {
+        return field >= 1 && field <= 7 ? inventory.nextWeekday((int) field) : field;
+    }
+
+    public Inventory inventory() {
+        return inventory;
+    }
+
+    public AvailabilityFeed availability() {
+        return feed;
+    }
+
+    public SessionTable sessions() {
+        return sessions;
     }
 
     // ---------- availability ----------
-    // يرجع CSV بالغرف المتاحة لنوع معيّن وفترة معيّنة
-    public synchronized String listAvailableRoomsCsv(String category, int startDay, int nights) {
-        int cat = catIndex(category);
-        if (startDay < 1 || nights < 1) return "";
-
-        StringBuilder sb = new StringBuilder();
-        for (int r = 0; r < 5; r++) {
-            boolean ok = true;
-            for (int i = 0; i < nights; i++) {
-                int dIdx = (startDay - 1 + i) % 7;  // wrap على 7 أيام
-                if (!availability[cat][r][dIdx]) {
-                    ok = false;
-                    break;
-                }
+    // يكتب CSV بالغرف المتاحة لنوع معيّن وفترة معيّنة
+    // one snapshot of the stay, no lock; served from listCache while the
+    // category has not changed since
+    public void appendAvailableRooms(int cat, long day, int nights, ResponseBuffer out) {
+        if (!inventory.inHorizon(day, nights)) return;
+        Inventory.Snapshot snap = inventory.snapshot(cat, day, nights);
+        if (nights > 0xFFFF || snap.version() < 0) {
+            appendFreeRooms(snap, cat, out);
+            return;
+        }
+        long key = (long) cat << 48 | (day & 0xFFFFFFFFL) << 16 | nights;
+        byte[] cached = listCache.get(key, null, snap.version());
+        if (cached != null) {
+            out.append(cached);
+            return;
+        }
+        int from = out.size();
+        appendFreeRooms(snap, cat, out);
+        listCache.put(key, null, snap.version(), Arrays.copyOfRange(out.array(), from, out.size()));
+    }
+
+    private void appendFreeRooms(Inventory.Snapshot snap, int cat, ResponseBuffer out) {
+        boolean first = true;
+        for (int w = 0; w < snap.roomWords(); w++) {
+            for (long free = snap.freeRooms(w); free != 0; free &= free - 1) {
+                if (!first) out.append((byte) ',');
+                out.append(inventory.roomIdBytes(cat, (w << 6) + Long.numberOfTrailingZeros(free)));
+                first = false;
             }
-            if (ok) {
-                if (sb.length() > 0) sb.append(",");
-                sb.append(ROOM_IDS[cat][r]);
+        }
+    }
+
+    // fills out with the free room indices of cat (in order) and returns how many
+    public int availableRooms(int cat, long day, int nights, int[] out) {
+        if (!inventory.inHorizon(day, nights)) return 0;
+        Inventory.Snapshot snap = inventory.snapshot(cat, day, nights);
+        int n = 0;
+        for (int w = 0; w < snap.roomWords(); w++) {
+            for (long free = snap.freeRooms(w); free != 0; free &= free - 1) {
+                out[n++] = (w << 6) + Long.numberOfTrailingZeros(free);
             }
         }
-        return sb.toString();
+        return n;
     }
 
     // حجز فعلي
-    public synchronized String reserve(String username, String category,
-                                       String roomId, int startDay, int nights) {
+    public String reserve(String username, String category,
+                          String roomId, LocalDate start, int nights) {
         int cat = catIndex(category);
-        int roomIdx = roomIndexFromId(cat, roomId);
+        int roomIdx = inventory.roomIndex(cat, roomId);
         if (roomIdx < 0) return null;
-        if (startDay < 1 || nights < 1) return null;
+        return reserve(username, cat, roomIdx, start, nights);
+    }
+
+    public String reserve(String username, int cat, int roomIdx, LocalDate start, int nights) {
+        // تأكد أن كل الليالي فاضية وعلّمها محجوزة
+        if (!inventory.tryBook(cat, roomIdx, start.toEpochDay(), nights)) return null;
+        return record(username, cat, roomIdx, start, nights);
+    }
 
-        // تأكد أن كل الليالي فاضية
-        for (int i = 0; i < nights; i++) {
-            int dIdx = (startDay - 1 + i) % 7;
-            if (!availability[cat][roomIdx][dIdx]) return null;
+    // the nights are already claimed in the calendar; logs and stores the booking
+    private String record(String username, int cat, int roomIdx, LocalDate start, int nights) {
+        String resId = reservationIds.next();
+        Reservation res = new Reservation(
+                resId, username, new Room(inventory.roomId(cat, roomIdx),
+                inventory.category(cat), roomIdx + 1),
+                start, nights);
+
+        CompletableFuture<Void> saved;
+        synchronized (fileLock) {
+            store.add(res);
+            saved = log.appendBook(res);
+        }
+        touchUser(username);
+        try {
+            PersistenceWriter.await(saved);  // confirm only once the booking is durable
+        } catch (UncheckedIOException e) {
+            unstore(username, List.of(res));
+            inventory.release(cat, roomIdx, start.toEpochDay(), nights);
+            throw e;
         }
+        feed.changed(cat, roomIdx, start.toEpochDay(), nights);
+        return resId;
+    }
 
-        // علّمها محجوزة
-        for (int i = 0; i < nights; i++) {
-            int dIdx = (startDay - 1 + i) % 7;
-            availability[cat][roomIdx][dIdx] = false;
+    // ---------- holds ----------
+    // Claims the nights for HoldTable.ttlSeconds() without booking them; the hold
+    // id, or null if the room is taken. IllegalStateException at the user's limit.
+    public String hold(String username, int cat, int roomIdx, LocalDate start, int nights) {
+        if (!holds.reserve(username)) throw new IllegalStateException("too many holds");
+        long day = start.toEpochDay();
+        if (!inventory.tryBook(cat, roomIdx, day, nights)) {
+            holds.unreserve(username);
+            return null;
         }
+        String holdId = holds.add(username, cat, roomIdx, day, nights);
+        feed.changed(cat, roomIdx, day, nights);
+        return holdId;
+    }
 
-        String resId = "R" + System.nanoTime();
-        Reservation res = new Reservation(
-                resId, username, new Room(roomId, category, roomIdx + 1),
-                startDay, nights);
+    // books a live hold of username; the reservation id, or null if the hold is
+    // unknown, expired, or its first night has passed
+    public String confirmHold(String username, String holdId) {
+        HoldTable.Hold h = holds.take(username, holdId);
+        if (h == null) return null;
+        if (!inventory.inHorizon(h.day, h.nights)) {
+            freeHeld(h);
+            return null;
+        }
+        return record(h.user, h.cat, h.room, LocalDate.ofEpochDay(h.day), h.nights);
+    }
 
-        String key = username.toLowerCase();
-        byUser.computeIfAbsent(key, k -> new ArrayList<>()).add(res);
-        saveReservation(res);
-        return resId;
+    public boolean releaseHold(String username, String holdId) {
+        HoldTable.Hold h = holds.take(username, holdId);
+        if (h == null) return false;
+        freeHeld(h);
+        return true;
     }
 
-    // CSV لكل حجوزات مستخدم:  resId|roomId@dayxNights, ...
-    public synchronized String reservationsCsvFor(String username) {
-        String key = username.toLowerCase();
-        List<Reservation> rs = byUser.getOrDefault(key, Collections.emptyList());
-        if (rs.isEmpty()) return "";
-        StringBuilder sb = new StringBuilder();
-        for (Reservation r : rs) {
-            if (sb.length() > 0) sb.append(",");
-            sb.append(r.getId())
-              .append("|")
-              .append(r.getRoom().getId())
-              .append("@")
-              .append(r.getDay())
-              .append("x")
-              .append(r.getNights());
+    private void freeHeld(HoldTable.Hold h) {
+        inventory.release(h.cat, h.room, h.day, h.nights);
+        feed.changed(h.cat, h.room, h.day, h.nights);
+    }
+
+    public List<Reservation> reservationsFor(String username) {
+        return store.forUser(username);
+    }
+
+    // Books every stay (cats[i], rooms[i], days[i], nights[i]) or none of them;
+    // returns the reservation ids in order, or null if any room was taken.
+    // The whole group is one log record.
+    public List<String> reserveAll(String username, int[] cats, int[] rooms, long[] days, int[] nights) {
+        for (int i = 0; i < cats.length; i++) {
+            if (!inventory.tryBook(cats[i], rooms[i], days[i], nights[i])) {
+                for (int j = 0; j < i; j++) inventory.release(cats[j], rooms[j], days[j], nights[j]);
+                return null;
+            }
+        }
+
+        List<Reservation> group = new ArrayList<>(cats.length);
+        List<String> ids = new ArrayList<>(cats.length);
+        for (int i = 0; i < cats.length; i++) {
+            String resId = reservationIds.next();
+            ids.add(resId);
+            group.add(new Reservation(resId, username,
+                    new Room(inventory.roomId(cats[i], rooms[i]), inventory.category(cats[i]), rooms[i] + 1),
+                    LocalDate.ofEpochDay(days[i]), nights[i]));
+        }
+
+        CompletableFuture<Void> saved;
+        synchronized (fileLock) {
+            for (Reservation r : group) store.add(r);
+            saved = log.appendGroup(group);
+        }
+        touchUser(username);
+        try {
+            PersistenceWriter.await(saved);
+        } catch (UncheckedIOException e) {
+            unstore(username, group);
+            for (int i = 0; i < cats.length; i++) inventory.release(cats[i], rooms[i], days[i], nights[i]);
+            throw e;
         }
-        return sb.toString();
+        for (int i = 0; i < cats.length; i++) feed.changed(cats[i], rooms[i], days[i], nights[i]);
+        return ids;
     }
 
-    // ---------- الإلغاء ----------
-    public synchronized boolean cancelReservation(String username, String resId) {
-        String key = username.toLowerCase();
-        List<Reservation> list = byUser.get(key);
-        if (list == null) return false;
-
-        Iterator<Reservation> it = list.iterator();
-        while (it.hasNext()) {
-            Reservation r = it.next();
-            if (!r.getId().equals(resId)) continue;
-
-            int cat = catIndex(r.getRoom().getType());
-            int roomIdx = roomIndexFromId(cat, r.getRoom().getId());
-            if (roomIdx >= 0) {
-                for (int i = 0; i < r.getNights(); i++) {
-                    int dIdx = (r.getDay() - 1 + i) % 7;
-                    availability[cat][roomIdx][dIdx] = true; // رجّعها متاحة
-                }
+    // Bookings whose log record did not become durable leave the store again.
+    // A cancel is logged for each (not waited for), in case the booking record
+    // still reaches the disk; replay keeps the last record per id.
+    private void unstore(String username, List<Reservation> group) {
+        synchronized (fileLock) {
+            for (Reservation r : group) {
+                store.remove(username, r.getId());
+                log.appendCancel(r.getId());
             }
+        }
+        touchUser(username);
+    }
 
-            it.remove();
-            rewriteReservationsFile();
-            return true;
+    // CSV لكل حجوزات مستخدم:  resId|roomId@yyyy-MM-ddxNights, ...
+    // served from resCache until the user books or cancels
+    public void appendReservations(String username, ResponseBuffer out) {
+        String key = userKey(username);
+        long version = userVersions.get(userStripe(key));
+        byte[] cached = resCache.get(key.hashCode(), key, version);
+        if (cached != null) {
+            out.append(cached);
+            return;
+        }
+        int from = out.size();
+        boolean first = true;
+        for (Reservation r : store.forUser(username)) {
+            if (!first) out.append((byte) ',');
+            out.append(r.getId())
+               .append((byte) '|')
+               .append(r.getRoom().getId())
+               .append((byte) '@')
+               .appendDate(r.getDate().toEpochDay())
+               .append((byte) 'x')
+               .append(r.getNights());
+            first = false;
         }
-        return false;
+        resCache.put(key.hashCode(), key, version, Arrays.copyOfRange(out.array(), from, out.size()));
     }
 
-    // ---------- persistence ----------
-    private void saveReservation(Reservation r) {
-        r.saveToFile();
-    }
-
-    private void rewriteReservationsFile() {
-        try (FileWriter fw = new FileWriter("reservations.txt", false)) {
-            for (List<Reservation> list : byUser.values()) {
-                for (Reservation r : list) {
-                    fw.write(r.getId() + "," +
-                             r.getUsername() + "," +
-                             r.getRoom().getType() + "," +
-                             r.getRoom().getNumber() + "," +
-                             r.getDay() + "," +
-                             r.getNights() + "\n");
-                }
+    // after a change to the user's reservations is visible in the store
+    private void touchUser(String username) {
+        userVersions.incrementAndGet(userStripe(userKey(username)));
+    }
+
+    private int userStripe(String key) {
+        return key.hashCode() & (userVersions.length() - 1);
+    }
+
+    public ResponseCache listAvailCache() {
+        return listCache;
+    }
+
+    public ResponseCache myResCache() {
+        return resCache;
+    }
+
+    // ---------- الإلغاء ----------
+    public boolean cancelReservation(String username, String resId) {
+        Reservation removed;
+        CompletableFuture<Void> saved;
+        synchronized (fileLock) {
+            removed = store.remove(username, resId);
+            if (removed == null) return false;
+            saved = log.appendCancel(resId);
+        }
+        touchUser(username);
+        try {
+            PersistenceWriter.await(saved);
+        } catch (UncheckedIOException e) {
+            // not cancelled after all: back into the store, and logged again in
+            // case the cancel record still reaches the disk
+            synchronized (fileLock) {
+                store.add(removed);
+                log.appendBook(removed);
             }
-        } catch (IOException ignored) {}
+            touchUser(username);
+            throw e;
+        }
+
+        // room numbers are 1-based room indexes, so no search by room id
+        int cat = catIndex(removed.getRoom().getType());
+        int roomIdx = removed.getRoom().getNumber() - 1;
+        if (roomIdx >= 0 && roomIdx < inventory.roomCount(cat)) {
+            inventory.release(cat, roomIdx,
+                    removed.getDate().toEpochDay(), removed.getNights()); // رجّعها متاحة
+            feed.changed(cat, roomIdx, removed.getDate().toEpochDay(), removed.getNights());
+        }
+        return true;
     }
 
+    // ---------- persistence ----------
+    // snapshot + log replay happen once at startup; the log is then only appended
     private void loadReservationsFromFile() {
-        File f = new File("reservations.txt");
-        if (!f.exists()) return;
-        try (BufferedReader br = new BufferedReader(new FileReader(f))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                // id,username,type,number,day,nights
-                String[] p = line.split(",", 6);
-                if (p.length == 6) {
-                    String id = p[0], user = p[1], type = p[2];
-                    int number = Integer.parseInt(p[3]);
-                    int day    = Integer.parseInt(p[4]);
-                    int nights = Integer.parseInt(p[5]);
-
-                    int cat = catIndex(type);
-                    String roomId = ROOM_IDS[cat][number - 1];
-
-                    // علّم الأيام محجوزة
-                    for (int i = 0; i < nights; i++) {
-                        int dIdx = (day - 1 + i) % 7;
-                        availability[cat][number - 1][dIdx] = false;
-                    }
-
-                    Reservation r = new Reservation(id, user,
-                            new Room(roomId, type, number), day, nights);
-                    byUser.computeIfAbsent(user.toLowerCase(),
-                            k -> new ArrayList<>()).add(r);
-                }
+        long t0 = System.nanoTime();
+        int[] loaded = {0};
+        try {
+            log.load((id, user, type, number, epochDay, nights) -> {
+                int cat = catIndex(type);
+                if (number < 1 || number > inventory.roomCount(cat)) return;
+
+                // علّم الأيام محجوزة
+                inventory.markBooked(cat, number - 1, epochDay, nights);
+
+                Reservation r = new Reservation(id, user,
+                        new Room(inventory.roomId(cat, number - 1), type, number),
+                        LocalDate.ofEpochDay(epochDay), nights);
+                store.add(r);
+                reservationIds.observe(id);
+                loaded[0]++;
+            });
+        } catch (IOException e) {
+            // the server must not start (and later compact over the files) with
+            // only part of the reservations
+            throw new UncheckedIOException("Error loading reservations: " + e.getMessage(), e);
+        }
+        System.out.println("Loaded " + loaded[0] + " reservations in "
+                + (System.nanoTime() - t0) / 1_000_000 + " ms");
+    }
+
+    // background: fold the log into a fresh snapshot once it has grown enough
+    private void compactLog() {
+        try {
+            synchronized (fileLock) {
+                if (log.pendingRecords() < COMPACT_AFTER) return;
+                log.rotate();
             }
-        } catch (Exception ignored) {}
+            log.writeSnapshot(store);
+        } catch (IOException e) {
+            System.out.println("Error compacting reservations: " + e.getMessage());
+        }
     }
 }
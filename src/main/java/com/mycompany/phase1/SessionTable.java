@@ -0,0 +1,84 @@
+package com.mycompany.phase1;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Login sessions. A successful LOGIN answers "OK LOGIN @<token>"; the token can
+// then be given instead of the username to BOOK2, BOOK_MULTI, HOLD, CONFIRM,
+// RELEASE, MY_RES and CANCEL (text and binary) and is checked with one map lookup, without the user table.
+// A token is only valid on the connection that logged in and ends with it, on
+// LOGOUT, or after -Dsession.ttlSeconds (1800) without use.
+// -Dsession.required=true refuses plain usernames in those commands.
+public class SessionTable {
+    public static final char PREFIX = '@';
+    private static final long TTL_MS = Long.getLong("session.ttlSeconds", 1800) * 1000;
+    private static final boolean REQUIRED = Boolean.getBoolean("session.required");
+
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private static final class Session {
+        final String user;
+        final Object owner;     // the connection that logged in
+        volatile long expiresAt;
+
+        Session(String user, Object owner, long expiresAt) {
+            this.user = user;
+            this.owner = owner;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public SessionTable() {
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::removeExpired, 60, 60, TimeUnit.SECONDS);
+    }
+
+    public static boolean isToken(String s) {
+        return !s.isEmpty() && s.charAt(0) == PREFIX;
+    }
+
+    // 128 random bits, URL-safe base64
+    public String open(String user, Object owner) {
+        byte[] b = new byte[16];
+        random.nextBytes(b);
+        String token = PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(b);
+        sessions.put(token, new Session(user, owner, System.currentTimeMillis() + TTL_MS));
+        return token;
+    }
+
+    // The user a USER argument stands for on owner's connection: the session's
+    // user for a live token of that connection (its expiry is pushed back), the
+    // argument itself for a plain username, null if it may not be used.
+    public String resolve(String arg, Object owner) {
+        if (!isToken(arg)) return REQUIRED ? null : arg;
+        Session s = sessions.get(arg);
+        if (s == null || s.owner != owner) return null;
+        long now = System.currentTimeMillis();
+        if (now >= s.expiresAt) {
+            sessions.remove(arg, s);
+            return null;
+        }
+        s.expiresAt = now + TTL_MS;
+        return s.user;
+    }
+
+    public boolean close(String token, Object owner) {
+        Session s = sessions.get(token);
+        return s != null && s.owner == owner && sessions.remove(token, s);
+    }
+
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(s -> now >= s.expiresAt);
+    }
+}
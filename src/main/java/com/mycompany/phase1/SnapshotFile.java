@@ -0,0 +1,158 @@
+package com.mycompany.phase1;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+// Binary reservation snapshot (reservations.snap), big-endian:
+//   int magic 'RSNP', int version
+//   int catCount,  catCount  x (u16 len, UTF-8)   category codes
+//   int userCount, userCount x (u16 len, UTF-8)   interned usernames
+//   int count,     count     x (u16 len, UTF-8)   reservation ids
+//   count x 13-byte record: int user, u8 cat, u16 room number, int epochDay, u16 nights
+// Record i belongs to id i. Loading maps the file read-only and walks the id and
+// record sections in step, so there is no line splitting or integer parsing on
+// startup and nothing is buffered on the heap.
+public final class SnapshotFile {
+    private static final int MAGIC = 0x52534E50;
+    private static final int VERSION = 1;
+
+    private SnapshotFile() {}
+
+    // One pass over the store (it may change underneath us): ids and records go to
+    // two side files while the tables are collected, then everything is joined.
+    public static void write(Path file, ReservationStore store) throws IOException {
+        Map<String, Integer> cats = new HashMap<>();
+        Map<String, Integer> users = new HashMap<>();
+        Path idsFile = Paths.get(file + ".ids");
+        Path recsFile = Paths.get(file + ".recs");
+        int[] count = {0};
+
+        try (DataOutputStream ids = open(idsFile); DataOutputStream recs = open(recsFile)) {
+            IOException[] err = {null};
+            store.forEach(r -> {
+                if (err[0] != null) return;
+                try {
+                    writeString(ids, r.getId());
+                    recs.writeInt(users.computeIfAbsent(r.getUsername(), k -> users.size()));
+                    recs.writeByte(fit(cats.computeIfAbsent(r.getRoom().getType(), k -> cats.size()), 0xFF, "category"));
+                    recs.writeShort(fit(r.getRoom().getNumber(), 0xFFFF, "room number"));
+                    recs.writeInt((int) r.getDate().toEpochDay());
+                    recs.writeShort(fit(r.getNights(), 0xFFFF, "nights"));
+                    count[0]++;
+                } catch (IOException e) {
+                    err[0] = e;
+                }
+            });
+            if (err[0] != null) throw err[0];
+        }
+
+        try (DataOutputStream out = open(file)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeTable(out, cats);
+            writeTable(out, users);
+            out.writeInt(count[0]);
+            Files.copy(idsFile, out);
+            Files.copy(recsFile, out);
+        } finally {
+            Files.deleteIfExists(idsFile);
+            Files.deleteIfExists(recsFile);
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+    }
+
+    private static DataOutputStream open(Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file.toFile()), 1 << 16));
+    }
+
+    // calls sink for every record; returns the number of records
+    public static int read(Path file, ReservationLog.Sink sink) throws IOException {
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        try {
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                throw new IOException("not a reservation snapshot: " + file);
+            }
+            return readRecords(buf, sink);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+                 | NegativeArraySizeException e) {  // a truncated or overwritten file
+            throw new IOException("damaged reservation snapshot: " + file, e);
+        }
+    }
+
+    private static int readRecords(MappedByteBuffer buf, ReservationLog.Sink sink) {
+        byte[] scratch = new byte[256];
+        String[] cats = readTable(buf, scratch);
+        String[] users = readTable(buf, scratch);
+        int count = buf.getInt();
+
+        // skip over the ids once to find the records, then walk both sections
+        // side by side so no id is held longer than its own record
+        ByteBuffer ids = buf.duplicate();
+        for (int i = 0; i < count; i++) {
+            int len = buf.getShort() & 0xFFFF;
+            buf.position(buf.position() + len);
+        }
+
+        for (int i = 0; i < count; i++) {
+            String id = readString(ids, scratch);
+            String user = users[buf.getInt()];
+            String cat = cats[buf.get() & 0xFF];
+            int number = buf.getShort() & 0xFFFF;
+            long epochDay = buf.getInt();
+            int nights = buf.getShort() & 0xFFFF;
+            sink.add(id, user, cat, number, epochDay, nights);
+        }
+        return count;
+    }
+
+    // v if it fits an unsigned field of that size; a snapshot never holds a truncated value
+    private static int fit(int v, int max, String what) throws IOException {
+        if (v < 0 || v > max) throw new IOException(what + " out of range for the snapshot: " + v);
+        return v;
+    }
+
+    private static void writeTable(DataOutputStream out, Map<String, Integer> table) throws IOException {
+        String[] byCode = new String[table.size()];
+        for (Map.Entry<String, Integer> e : table.entrySet()) byCode[e.getValue()] = e.getKey();
+        out.writeInt(byCode.length);
+        for (String s : byCode) writeString(out, s);
+    }
+
+    private static String[] readTable(ByteBuffer buf, byte[] scratch) {
+        String[] table = new String[buf.getInt()];
+        for (int i = 0; i < table.length; i++) table[i] = readString(buf, scratch);
+        return table;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(b.length);
+        out.write(b);
+    }
+
+    private static String readString(ByteBuffer buf, byte[] scratch) {
+        int len = buf.getShort() & 0xFFFF;
+        byte[] b = len <= scratch.length ? scratch : new byte[len];
+        buf.get(b, 0, len);
+        return new String(b, 0, len, StandardCharsets.UTF_8);
+    }
+}